@@ -0,0 +1,91 @@
+package uk.ac.ebi.subs.api.converters;
+
+import org.apache.commons.csv.CSVParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.subs.api.services.SheetService;
+import uk.ac.ebi.subs.api.sheetloader.SheetFixtures;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an uploaded CSV file into a sheet: parsing it with {@link SheetCsvMessageConverter#readStream}, then
+ * pre-processing the rows with {@link SheetService#preProcessSheet}, or doing both in one pass with
+ * {@link SheetService#preProcessRows}, as uploads do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SheetReadingBenchmark {
+
+    @Param({"1000", "10000"})
+    private int rowCount;
+
+    @Param({"0", "20"})
+    private int attributeColumns;
+
+    @Param({"false", "true"})
+    private boolean attributeUnits;
+
+    private SheetCsvMessageConverter sheetCsvMessageConverter = new SheetCsvMessageConverter();
+    private SheetService sheetService = new SheetService();
+
+    private byte[] csv;
+
+    @Setup
+    public void setUp() {
+        List<String> headers = SheetFixtures.headers(SheetFixtures.sampleTemplate(), attributeColumns, attributeUnits);
+        csv = SheetFixtures.csv(headers, SheetFixtures.rows(headers, rowCount)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Spreadsheet readStream() throws IOException {
+        return sheetCsvMessageConverter.readStream(new ByteArrayInputStream(csv));
+    }
+
+    @Benchmark
+    public Spreadsheet preProcessSheet(ParsedSheet parsedSheet) {
+        sheetService.preProcessSheet(parsedSheet.sheet);
+        return parsedSheet.sheet;
+    }
+
+    @Benchmark
+    public Spreadsheet preProcessRows() throws IOException {
+        try (CSVParser csvParser = sheetCsvMessageConverter.parse(new ByteArrayInputStream(csv))) {
+            return sheetService.preProcessRows(csvParser);
+        }
+    }
+
+    /**
+     * A freshly parsed sheet for each call, as pre-processing changes the sheet.
+     */
+    @State(Scope.Thread)
+    public static class ParsedSheet {
+
+        private Spreadsheet sheet;
+
+        @Setup(Level.Invocation)
+        public void parse(SheetReadingBenchmark benchmark) throws IOException {
+            sheet = benchmark.readStream();
+            sheet.setChecklistId("sample-checklist");
+        }
+    }
+}
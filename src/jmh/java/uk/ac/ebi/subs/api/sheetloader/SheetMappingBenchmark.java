@@ -0,0 +1,172 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONObject;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ebi.subs.api.services.SubmittableValidationDispatcher;
+import uk.ac.ebi.subs.data.component.Team;
+import uk.ac.ebi.subs.repository.model.Checklist;
+import uk.ac.ebi.subs.repository.model.DataType;
+import uk.ac.ebi.subs.repository.model.Sample;
+import uk.ac.ebi.subs.repository.model.StoredSubmittable;
+import uk.ac.ebi.subs.repository.model.Submission;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.templates.Capture;
+import uk.ac.ebi.subs.repository.model.templates.Template;
+import uk.ac.ebi.subs.repository.repos.ChecklistRepository;
+import uk.ac.ebi.subs.repository.repos.DataTypeRepository;
+import uk.ac.ebi.subs.repository.repos.SpreadsheetRepository;
+import uk.ac.ebi.subs.repository.repos.SubmissionRepository;
+import uk.ac.ebi.subs.repository.repos.submittables.SampleRepository;
+import uk.ac.ebi.subs.repository.repos.submittables.SubmittableRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping the rows of a sheet to submittables, without storing them: matching the headers to the template
+ * captures with {@link SheetLoaderService#mapColumns}, capturing each row as a document with
+ * {@link SheetLoaderService#rowToDocument}, and binding the documents with
+ * {@link SheetLoaderService#documentToSubmittable}.
+ *
+ * The loader is built with mocked repositories, none of which are used by these stages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SheetMappingBenchmark {
+
+    @Param({"1000", "10000"})
+    private int rowCount;
+
+    @Param({"0", "20"})
+    private int attributeColumns;
+
+    @Param({"false", "true"})
+    private boolean attributeUnits;
+
+    private ForkJoinPool sheetConversionPool;
+    private SheetLoaderService sheetLoaderService;
+
+    private Template template;
+    private Row headerRow;
+    private List<Row> rows;
+    private ColumnMappingPlan columnMappingPlan;
+    private List<JSONObject> documents;
+
+    private Submission submission;
+    private DataType dataType;
+    private Checklist checklist;
+
+    @Setup
+    public void setUp() {
+        sheetConversionPool = new ForkJoinPool(1);
+        sheetLoaderService = sheetLoaderService(sheetConversionPool);
+
+        template = SheetFixtures.sampleTemplate();
+        List<String> headers = SheetFixtures.headers(template, attributeColumns, attributeUnits);
+        headerRow = new Row(headers);
+        rows = SheetFixtures.rows(headers, rowCount);
+
+        columnMappingPlan = ColumnMappingPlan.compile(
+                headers, template.getColumnCaptures(), Optional.ofNullable(template.getDefaultCapture()));
+
+        documents = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            documents.add(sheetLoaderService.rowToDocument(row, columnMappingPlan));
+        }
+
+        submission = new Submission();
+        submission.setId("benchmark-submission");
+        submission.setTeam(Team.build("subs.benchmark-team"));
+
+        dataType = new DataType();
+        dataType.setId("samples");
+        dataType.setSubmittableClassName(Sample.class.getName());
+
+        checklist = new Checklist();
+        checklist.setId("sample-checklist");
+        checklist.setDataTypeId(dataType.getId());
+        checklist.setSpreadsheetTemplate(template);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sheetConversionPool.shutdown();
+    }
+
+    @Benchmark
+    public List<Capture> mapColumns() {
+        return sheetLoaderService.mapColumns(
+                headerRow, template.getColumnCaptures(), Optional.ofNullable(template.getDefaultCapture()));
+    }
+
+    @Benchmark
+    public void rowToDocument(Blackhole blackhole) {
+        for (Row row : rows) {
+            blackhole.consume(sheetLoaderService.rowToDocument(row, columnMappingPlan));
+        }
+    }
+
+    @Benchmark
+    public void documentToSubmittable(Blackhole blackhole) {
+        for (int i = 0; i < rows.size(); i++) {
+            blackhole.consume(sheetLoaderService.documentToSubmittable(
+                    Sample.class, submission, rows.get(i), documents.get(i), dataType, checklist));
+        }
+    }
+
+    private static SheetLoaderService sheetLoaderService(ForkJoinPool sheetConversionPool) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+
+        Map<Class<? extends StoredSubmittable>, SubmittableRepository<? extends StoredSubmittable>>
+                submittableRepositoryMap = new HashMap<>();
+        submittableRepositoryMap.put(Sample.class, Mockito.mock(SampleRepository.class));
+
+        SheetLoaderConfig sheetLoaderConfig = new SheetLoaderConfig();
+
+        return new SheetLoaderService(
+                submittableRepositoryMap,
+                objectMapper,
+                Mockito.mock(SpreadsheetRepository.class),
+                Mockito.mock(SubmittableValidationDispatcher.class),
+                Mockito.mock(SheetBulkOps.class),
+                Mockito.mock(DataTypeRepository.class),
+                Mockito.mock(ChecklistRepository.class),
+                Mockito.mock(SubmissionRepository.class),
+                sheetLoaderConfig,
+                sheetConversionPool,
+                new ColumnMappingPlanCache(sheetLoaderConfig),
+                Mockito.mock(SheetLoadProgressService.class),
+                Mockito.mock(SheetRowStore.class),
+                Mockito.mock(SheetRowHashService.class),
+                Mockito.mock(SheetReferenceResolver.class),
+                new ChecklistSchemaCache(sheetLoaderConfig),
+                new SheetLoaderMetrics(new SimpleMeterRegistry())
+        );
+    }
+}
@@ -0,0 +1,48 @@
+package uk.ac.ebi.subs.api.config;
+
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.core.instrument.util.HierarchicalNameMapper;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Lists the Micrometer meters on the actuator {@code metrics} endpoint, next to the metrics of the actuator itself.
+ *
+ * Each measurement of a meter becomes one metric, named after the meter and its tags, followed by the statistic,
+ * for example {@code sheet.loader.rows.checklist.samples.dataType.samples.count}.
+ */
+@Component
+@RequiredArgsConstructor
+public class MeterRegistryPublicMetrics implements PublicMetrics {
+
+    @NonNull
+    private MeterRegistry meterRegistry;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+
+        for (Meter meter : meterRegistry.getMeters()) {
+            String name = HierarchicalNameMapper.DEFAULT.toHierarchicalName(meter.getId(), NamingConvention.dot);
+
+            for (Measurement measurement : meter.measure()) {
+                metrics.add(new Metric<>(
+                        name + "." + measurement.getStatistic().getTagValueRepresentation(),
+                        measurement.getValue()
+                ));
+            }
+        }
+
+        return metrics;
+    }
+}
@@ -0,0 +1,31 @@
+package uk.ac.ebi.subs.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Batching options for the {@link uk.ac.ebi.subs.api.services.ValidationBatchPublisher}.
+ * They are configurable in the application yml files.
+ */
+@Component
+@ConfigurationProperties("usi.validation-dispatch")
+@Data
+public class ValidationDispatchConfig {
+
+    /**
+     * Send the validation envelopes of a sheet chunk in batch messages. The validation coordinator must split
+     * batches up again, so this is off by default, and every envelope is sent in a message of its own.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of validation envelopes packed into one broker message.
+     */
+    private int batchSize = 100;
+
+    /**
+     * Maximum size of one batch message, in bytes.
+     */
+    private int bufferLimit = 1024 * 1024;
+}
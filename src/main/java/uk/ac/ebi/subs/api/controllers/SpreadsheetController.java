@@ -3,23 +3,35 @@ package uk.ac.ebi.subs.api.controllers;
 import lombok.Data;
 import lombok.NonNull;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.rest.core.RepositoryConstraintViolationException;
 import org.springframework.data.rest.core.event.AfterCreateEvent;
 import org.springframework.data.rest.core.event.BeforeCreateEvent;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
 import org.springframework.data.rest.webmvc.support.RepositoryEntityLinks;
 import org.springframework.hateoas.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.method.P;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import uk.ac.ebi.subs.api.converters.SheetCsvMessageConverter;
+import uk.ac.ebi.subs.api.handlers.SheetHandler;
 import uk.ac.ebi.subs.api.processors.SpreadsheetResourceProcessor;
-import uk.ac.ebi.subs.api.services.SheetService;
+import uk.ac.ebi.subs.api.services.SheetUploadReader;
+import uk.ac.ebi.subs.api.sheetloader.SheetLoadProgressService;
+import uk.ac.ebi.subs.api.sheetloader.SheetLoaderService;
+import uk.ac.ebi.subs.api.sheetloader.SheetPreview;
+import uk.ac.ebi.subs.api.sheetloader.SheetRowStore;
+import uk.ac.ebi.subs.api.sheetloader.SheetUploadStore;
+import uk.ac.ebi.subs.api.validators.SheetValidator;
 import uk.ac.ebi.subs.repository.model.Checklist;
 import uk.ac.ebi.subs.repository.model.Submission;
 import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
@@ -32,7 +44,7 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Converts the CSV file to a {@link Spreadsheet} object, remove the unneeded part of the object,
+ * Converts the CSV file or Excel workbook to a {@link Spreadsheet} object, remove the unneeded part of the object,
  * insert it into the repo and returns it as a resource entity.
  *
  * Created by Dave on 21/10/2017.
@@ -42,6 +54,7 @@ import java.io.InputStream;
 @CrossOrigin
 public class SpreadsheetController {
 
+    private static final String XLSX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
 
     @NonNull
     private ApplicationEventPublisher publisher;
@@ -50,7 +63,7 @@ public class SpreadsheetController {
     private SpreadsheetRepository spreadsheetRepository;
 
     @NonNull
-    private SheetService sheetService;
+    private SheetUploadReader sheetUploadReader;
 
     @NonNull
     private SubmissionRepository submissionRepository;
@@ -58,23 +71,136 @@ public class SpreadsheetController {
     @NonNull
     private ChecklistRepository checklistRepository;
 
-    @NonNull
-    private SheetCsvMessageConverter sheetCsvMessageConverter;
-
     @NonNull
     private RepositoryEntityLinks repositoryEntityLinks;
 
     @NonNull
     private SpreadsheetResourceProcessor spreadsheetResourceProcessor;
 
+    @NonNull
+    private SheetRowStore sheetRowStore;
+
+    @NonNull
+    private SheetLoaderService sheetLoaderService;
+
+    @NonNull
+    private SheetUploadStore sheetUploadStore;
+
+    @NonNull
+    private SheetLoadProgressService sheetLoadProgressService;
+
+    @NonNull
+    private SheetValidator sheetValidator;
+
+    @NonNull
+    private SheetHandler sheetHandler;
+
     @PreAuthorizeSubmissionIdTeamName
-    @RequestMapping(path = "/submissions/{submissionId}/spreadsheet", method = RequestMethod.POST, consumes = {"text/csv", "text/csv;charset=UTF-8"})
+    @RequestMapping(path = "/submissions/{submissionId}/spreadsheet", method = RequestMethod.POST, consumes = {"text/csv", "text/csv;charset=UTF-8", "application/gzip", XLSX_CONTENT_TYPE})
     public ResponseEntity<Resource<Spreadsheet>> uploadCsv(
             @PathVariable @P("submissionId") String submissionId,
             @RequestParam @P("checklistId") String checklistId,
+            @RequestHeader(name = HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(name = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
             InputStream inputStream) throws IOException {
 
+        Spreadsheet sheet = readSheet(submissionId, checklistId, inputStream, contentType, contentEncoding);
+
+        publisher.publishEvent(new BeforeCreateEvent(sheet));
+
+        // very large sheets would not fit in one document, so their rows are stored separately
+        if (sheetRowStore.shouldExternaliseRows(sheet)) {
+            sheetRowStore.externaliseRows(sheet);
+        }
+
+        sheet = spreadsheetRepository.insert(sheet);
+        publisher.publishEvent(new AfterCreateEvent(sheet));
+
+        ResponseEntity<Resource<Spreadsheet>> resourceSupportResponseEntity = new ResponseEntity<>(
+                toResource(sheet),
+                HttpStatus.CREATED
+        );
+
+        return resourceSupportResponseEntity;
+    }
+
+    /**
+     * Accepts an uploaded CSV file without reading it, so a large file does not hold a request thread while it is
+     * parsed. The file is staged as it was sent, and read into rows when the sheet is picked up for loading.
+     * The sheet is returned without rows, its progress link shows when it has been read and loaded, or why it
+     * could not be.
+     */
+    @PreAuthorizeSubmissionIdTeamName
+    @RequestMapping(path = "/submissions/{submissionId}/spreadsheet", method = RequestMethod.POST, consumes = {"text/csv", "text/csv;charset=UTF-8", "application/gzip", XLSX_CONTENT_TYPE}, params = {"async=true", "dryRun!=true"})
+    public ResponseEntity<Resource<Spreadsheet>> uploadCsvAsync(
+            @PathVariable @P("submissionId") String submissionId,
+            @RequestParam @P("checklistId") String checklistId,
+            @RequestHeader(name = HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(name = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            InputStream inputStream) {
+
+        Spreadsheet sheet = newSheet(submissionId, checklistId);
+
+        // the validator would reject a sheet without rows, they are checked by the loader once they have been read
+        BindingResult errors = new BeanPropertyBindingResult(sheet, "spreadsheet");
+        sheetValidator.validateDestination(sheet, errors);
+
+        if (errors.hasErrors()) {
+            throw new RepositoryConstraintViolationException(errors);
+        }
+
+        sheetHandler.handleBeforeCreate(sheet);
 
+        sheetUploadStore.stage(sheet.getId(), inputStream, contentType, contentEncoding);
+        sheetLoadProgressService.markStaged(sheet);
+
+        sheet = spreadsheetRepository.insert(sheet);
+        publisher.publishEvent(new AfterCreateEvent(sheet));
+
+        return new ResponseEntity<>(toResource(sheet), HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Maps the first rows of an uploaded CSV file as a load would, and returns the errors of each row.
+     * Nothing is stored and no load is started.
+     */
+    @PreAuthorizeSubmissionIdTeamName
+    @RequestMapping(path = "/submissions/{submissionId}/spreadsheet", method = RequestMethod.POST, consumes = {"text/csv", "text/csv;charset=UTF-8", "application/gzip", XLSX_CONTENT_TYPE}, params = "dryRun=true")
+    public ResponseEntity<SheetPreview> previewCsv(
+            @PathVariable @P("submissionId") String submissionId,
+            @RequestParam @P("checklistId") String checklistId,
+            @RequestParam(name = "rows", defaultValue = "100") int rows,
+            @RequestHeader(name = HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(name = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            InputStream inputStream) throws IOException {
+
+        Spreadsheet sheet = readSheet(submissionId, checklistId, inputStream, contentType, contentEncoding);
+
+        // runs the same checks as an upload, the handlers only fill in the sheet
+        publisher.publishEvent(new BeforeCreateEvent(sheet));
+
+        return new ResponseEntity<>(sheetLoaderService.previewSheet(sheet, rows), HttpStatus.OK);
+    }
+
+    private Spreadsheet readSheet(String submissionId, String checklistId, InputStream inputStream,
+                                  MediaType contentType, String contentEncoding) throws IOException {
+        Spreadsheet template = newSheet(submissionId, checklistId);
+
+        //it should be possible to use Sheet directly, but the converter doesn't seem to be picked up by Spring
+        Spreadsheet sheet = sheetUploadReader.read(inputStream, contentType, contentEncoding);
+
+        sheet.setSubmissionId(template.getSubmissionId());
+        sheet.setTeam(template.getTeam());
+        sheet.setChecklistId(template.getChecklistId());
+        sheet.setDataTypeId(template.getDataTypeId());
+
+        return sheet;
+    }
+
+    /**
+     * @return a sheet without rows for the submission and checklist, which must exist
+     */
+    private Spreadsheet newSheet(String submissionId, String checklistId) {
         Submission submission = submissionRepository.findOne(submissionId);
 
         if (submission == null) {
@@ -87,20 +213,16 @@ public class SpreadsheetController {
             throw new ResourceNotFoundException();
         }
 
-        //it should be possible to use Sheet directly, but the converter doesn't seem to be picked up by Spring
-        Spreadsheet sheet = sheetCsvMessageConverter.readStream(inputStream);
-
+        Spreadsheet sheet = new Spreadsheet();
         sheet.setSubmissionId(submission.getId());
         sheet.setTeam(submission.getTeam());
         sheet.setChecklistId(checklistId);
         sheet.setDataTypeId(checklist.getDataTypeId());
 
-        sheetService.preProcessSheet(sheet);
-
-        publisher.publishEvent(new BeforeCreateEvent(sheet));
-        sheet = spreadsheetRepository.insert(sheet);
-        publisher.publishEvent(new AfterCreateEvent(sheet));
+        return sheet;
+    }
 
+    private Resource<Spreadsheet> toResource(Spreadsheet sheet) {
         Resource<Spreadsheet> resource = new Resource<>(sheet);
 
         resource.add(
@@ -108,15 +230,7 @@ public class SpreadsheetController {
                 repositoryEntityLinks.linkToSingleResource(Spreadsheet.class, sheet.getId())
         );
 
-        resource = spreadsheetResourceProcessor.process(resource);
-
-
-        ResponseEntity<Resource<Spreadsheet>> resourceSupportResponseEntity = new ResponseEntity<>(
-                resource,
-                HttpStatus.CREATED
-        );
-
-        return resourceSupportResponseEntity;
+        return spreadsheetResourceProcessor.process(resource);
     }
 
 }
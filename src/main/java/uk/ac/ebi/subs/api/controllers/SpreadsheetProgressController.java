@@ -0,0 +1,74 @@
+package uk.ac.ebi.subs.api.controllers;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.hateoas.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import uk.ac.ebi.subs.api.sheetloader.SheetLoadProgress;
+import uk.ac.ebi.subs.api.sheetloader.SheetLoadProgressService;
+import uk.ac.ebi.subs.api.sheetloader.SheetLoadProgressStreamer;
+import uk.ac.ebi.subs.repository.repos.SubmissionRepository;
+
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
+
+/**
+ * REST endpoints for following the loading of an uploaded spreadsheet, without fetching the sheet and its rows.
+ * The progress can be polled, or streamed as server-sent events until the load has been completed.
+ */
+@RestController
+@CrossOrigin
+@RequiredArgsConstructor
+public class SpreadsheetProgressController {
+
+    @NonNull
+    private SheetLoadProgressService sheetLoadProgressService;
+
+    @NonNull
+    private SheetLoadProgressStreamer sheetLoadProgressStreamer;
+
+    @NonNull
+    private SubmissionRepository submissionRepository;
+
+    @GetMapping("/spreadsheets/{sheetId}/progress")
+    public Resource<SheetLoadProgress> progress(@PathVariable String sheetId) {
+        SheetLoadProgress progress = accessibleProgress(sheetId);
+
+        Resource<SheetLoadProgress> resource = new Resource<>(progress);
+
+        resource.add(
+                linkTo(methodOn(this.getClass()).progress(sheetId)).withSelfRel(),
+                linkTo(methodOn(this.getClass()).progressStream(sheetId)).withRel("stream")
+        );
+
+        return resource;
+    }
+
+    @GetMapping(value = "/spreadsheets/{sheetId}/progress/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter progressStream(@PathVariable String sheetId) {
+        accessibleProgress(sheetId);
+
+        return sheetLoadProgressStreamer.stream(sheetId);
+    }
+
+    private SheetLoadProgress accessibleProgress(String sheetId) {
+        SheetLoadProgress progress = sheetLoadProgressService.findProgress(sheetId);
+
+        if (progress == null) {
+            throw new ResourceNotFoundException();
+        }
+
+        // the submission repository only returns submissions that belong to one of the user's teams
+        if (submissionRepository.findOne(progress.getSubmissionId()) == null) {
+            throw new ResourceNotFoundException();
+        }
+
+        return progress;
+    }
+}
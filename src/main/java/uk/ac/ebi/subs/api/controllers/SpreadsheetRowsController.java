@@ -0,0 +1,55 @@
+package uk.ac.ebi.subs.api.controllers;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resource;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import uk.ac.ebi.subs.api.sheetloader.SheetLoadProgressService;
+import uk.ac.ebi.subs.api.sheetloader.SheetRowStore;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+import uk.ac.ebi.subs.repository.repos.SubmissionRepository;
+
+/**
+ * REST endpoint for paging through the rows of an uploaded spreadsheet, and the errors of each row, wherever the
+ * {@link SheetRowStore} keeps them. The rows of very large sheets are not part of the sheet resource.
+ */
+@RestController
+@CrossOrigin
+@RequiredArgsConstructor
+public class SpreadsheetRowsController {
+
+    @NonNull
+    private SheetLoadProgressService sheetLoadProgressService;
+
+    @NonNull
+    private SheetRowStore sheetRowStore;
+
+    @NonNull
+    private SubmissionRepository submissionRepository;
+
+    @NonNull
+    private PagedResourcesAssembler pagedResourcesAssembler;
+
+    @GetMapping("/spreadsheets/{sheetId}/rows")
+    public PagedResources<Resource<Row>> rows(@PathVariable String sheetId, Pageable pageable) {
+        Spreadsheet sheet = sheetLoadProgressService.findSheetWithoutRows(sheetId);
+
+        // the submission repository only returns submissions that belong to one of the user's teams
+        if (sheet == null || submissionRepository.findOne(sheet.getSubmissionId()) == null) {
+            throw new ResourceNotFoundException();
+        }
+
+        Page<Row> rows = sheetRowStore.readRows(sheetId, pageable);
+
+        return pagedResourcesAssembler.toResource(rows);
+    }
+}
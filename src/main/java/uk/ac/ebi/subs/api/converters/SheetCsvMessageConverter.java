@@ -15,6 +15,7 @@ import uk.ac.ebi.subs.repository.model.sheets.Row;
 import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
 
 import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -25,6 +26,8 @@ import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
 
 /**
  * This class adds support for reading and writing CSV media types messages through the HTTP protocol.
@@ -34,6 +37,9 @@ public class SheetCsvMessageConverter extends AbstractHttpMessageConverter<Sprea
 
     public static final MediaType CSV_UTF8_MEDIA_TYPE = new MediaType("text", "csv", Charset.forName("utf-8"));
     public static final MediaType CSV_MEDIA_TYPE = new MediaType("text", "csv");
+    public static final MediaType GZIP_MEDIA_TYPE = new MediaType("application", "gzip");
+
+    private static final String GZIP_CONTENT_ENCODING = "gzip";
 
     public SheetCsvMessageConverter() {
         super(CSV_MEDIA_TYPE, CSV_UTF8_MEDIA_TYPE);
@@ -72,6 +78,37 @@ public class SheetCsvMessageConverter extends AbstractHttpMessageConverter<Sprea
 
     }
 
+    /**
+     * Decompresses an uploaded body as it is read, if it was sent as gzip, either with a gzip content encoding
+     * or as a gzip file. The whole file is never held in memory.
+     *
+     * @param body            the request body
+     * @param contentType     the content type of the request
+     * @param contentEncoding the content encoding of the request, or null if there is none
+     * @return a stream of the CSV content
+     */
+    public static InputStream decodeBody(InputStream body, MediaType contentType, String contentEncoding) throws IOException {
+        boolean gzipEncoded = contentEncoding != null && GZIP_CONTENT_ENCODING.equalsIgnoreCase(contentEncoding.trim());
+        boolean gzipFile = contentType != null && GZIP_MEDIA_TYPE.includes(contentType);
+
+        if (gzipEncoded || gzipFile) {
+            try {
+                return new GZIPInputStream(body);
+            } catch (ZipException | EOFException e) {
+                throw new HttpMessageNotReadableException("The request body is not gzip compressed", e);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Opens a parser over the CSV records of the stream, so they can be read one at a time.
+     * The caller has to close the parser.
+     */
+    public CSVParser parse(InputStream inputStream) throws IOException {
+        return CSVFormat.EXCEL.parse(new InputStreamReader(inputStream));
+    }
+
     public Spreadsheet readStream(InputStream inputStream) throws IOException {
         Spreadsheet sheet = new Spreadsheet();
 
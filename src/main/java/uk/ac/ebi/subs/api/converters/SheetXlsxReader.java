@@ -0,0 +1,137 @@
+package uk.ac.ebi.subs.api.converters;
+
+import org.apache.poi.UnsupportedFileFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the rows of the first worksheet of an Excel workbook, one row at a time.
+ *
+ * The worksheet XML is read with a SAX parser, so only the row being read is held in memory, whatever the size of
+ * the workbook. The upload is copied to a temporary file first, as a workbook is a zip file that can not be read
+ * in one pass.
+ */
+@Component
+public class SheetXlsxReader {
+
+    public static final MediaType XLSX_MEDIA_TYPE =
+            new MediaType("application", "vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    /**
+     * Reads the rows of the first worksheet of a workbook, with each cell formatted as Excel shows it.
+     * The empty cells at the end of a row are left out.
+     *
+     * @param body        the workbook
+     * @param rowConsumer receives the cells of each row, in order
+     */
+    public void read(InputStream body, Consumer<List<String>> rowConsumer) throws IOException {
+        Path workbookFile = Files.createTempFile("sheet-upload-", ".xlsx");
+
+        try {
+            Files.copy(body, workbookFile, StandardCopyOption.REPLACE_EXISTING);
+            readWorkbook(workbookFile, rowConsumer);
+        } finally {
+            Files.deleteIfExists(workbookFile);
+        }
+    }
+
+    private void readWorkbook(Path workbookFile, Consumer<List<String>> rowConsumer) throws IOException {
+        OPCPackage workbook;
+        try {
+            workbook = OPCPackage.open(workbookFile.toFile(), PackageAccess.READ);
+        } catch (OpenXML4JException | UnsupportedFileFormatException e) {
+            throw new HttpMessageNotReadableException("The uploaded file is not an XLSX workbook", e);
+        }
+
+        try {
+            XSSFReader xssfReader = new XSSFReader(workbook);
+            Iterator<InputStream> worksheets = xssfReader.getSheetsData();
+
+            if (!worksheets.hasNext()) {
+                return;
+            }
+
+            XMLReader worksheetParser = SAXHelper.newXMLReader();
+            worksheetParser.setContentHandler(new XSSFSheetXMLHandler(
+                    xssfReader.getStylesTable(),
+                    null,
+                    new ReadOnlySharedStringsTable(workbook),
+                    new RowHandler(rowConsumer),
+                    new DataFormatter(),
+                    false
+            ));
+
+            try (InputStream worksheet = worksheets.next()) {
+                worksheetParser.parse(new InputSource(worksheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new HttpMessageNotReadableException("The uploaded XLSX workbook could not be read", e);
+        } finally {
+            // the workbook was opened read only, closing it would try to save it
+            workbook.revert();
+        }
+    }
+
+    /**
+     * Turns the cell events of a worksheet into rows, filling in the cells missing between two cells of a row.
+     */
+    private static class RowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final Consumer<List<String>> rowConsumer;
+        private List<String> cells;
+
+        RowHandler(Consumer<List<String>> rowConsumer) {
+            this.rowConsumer = rowConsumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells = new ArrayList<>();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            rowConsumer.accept(cells);
+            cells = null;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference == null ? cells.size() : new CellReference(cellReference).getCol();
+
+            while (cells.size() < column) {
+                cells.add("");
+            }
+            cells.add(formattedValue == null ? "" : formattedValue);
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+}
@@ -8,11 +8,16 @@ import org.springframework.data.rest.webmvc.support.RepositoryEntityLinks;
 import org.springframework.hateoas.Resource;
 import org.springframework.hateoas.ResourceProcessor;
 import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.api.controllers.SpreadsheetProgressController;
+import uk.ac.ebi.subs.api.controllers.SpreadsheetRowsController;
 import uk.ac.ebi.subs.repository.model.Checklist;
 import uk.ac.ebi.subs.repository.model.DataType;
 import uk.ac.ebi.subs.repository.model.Submission;
 import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
 
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
+
 /**
  * Resource processor for {@link Spreadsheet} entity used by Spring MVC controller.
  */
@@ -33,7 +38,9 @@ public class SpreadsheetResourceProcessor implements ResourceProcessor<Resource<
         resource.add(
             repositoryEntityLinks.linkToSingleResource(Submission.class, spreadsheet.getSubmissionId()),
             repositoryEntityLinks.linkToSingleResource(Checklist.class, spreadsheet.getChecklistId()),
-            repositoryEntityLinks.linkToSingleResource(DataType.class, spreadsheet.getDataTypeId())
+            repositoryEntityLinks.linkToSingleResource(DataType.class, spreadsheet.getDataTypeId()),
+            linkTo(methodOn(SpreadsheetProgressController.class).progress(spreadsheet.getId())).withRel("progress"),
+            linkTo(methodOn(SpreadsheetRowsController.class).rows(spreadsheet.getId(), null)).withRel("rows")
         );
 
         //redact verbose material
@@ -0,0 +1,82 @@
+package uk.ac.ebi.subs.api.services;
+
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Makes equal cell values of a sheet share one {@link String}, column by column.
+ * Sheets repeat values such as taxon names and units in every row, so a large sheet held in memory shrinks a lot.
+ *
+ * Columns whose values turn out to be mostly distinct, such as aliases, are no longer interned once that is clear,
+ * so they do not fill up the table. An interner belongs to one sheet and is not thread safe.
+ */
+public class SheetCellInterner {
+
+    /**
+     * Number of values of a column seen before deciding whether interning it is worthwhile.
+     */
+    static final int SAMPLE_SIZE = 1000;
+
+    private final List<Column> columns = new ArrayList<>();
+
+    /**
+     * Interns the cells of each row, in place. The interner, and its table of values, is only held for the call.
+     */
+    public static void internRows(Collection<Row> rows) {
+        SheetCellInterner interner = new SheetCellInterner();
+        for (Row row : rows) {
+            interner.internCells(row.getCells());
+        }
+    }
+
+    public void internCells(List<String> cells) {
+        for (int i = 0; i < cells.size(); i++) {
+            cells.set(i, intern(i, cells.get(i)));
+        }
+    }
+
+    /**
+     * @param column the index of the column the value is in
+     * @param value  the cell value
+     * @return an equal value, shared with the earlier equal values of the column where possible
+     */
+    public String intern(int column, String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.isEmpty()) {
+            return "";
+        }
+
+        while (columns.size() <= column) {
+            columns.add(new Column());
+        }
+        return columns.get(column).intern(value);
+    }
+
+    private static class Column {
+        private Map<String, String> values = new HashMap<>();
+        private int seen;
+
+        String intern(String value) {
+            if (values == null) {
+                return value;
+            }
+
+            seen++;
+            String existing = values.putIfAbsent(value, value);
+
+            if (seen == SAMPLE_SIZE && values.size() > SAMPLE_SIZE / 2) {
+                // mostly distinct values, sharing them would save little
+                values = null;
+            }
+
+            return existing != null ? existing : value;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.springframework.stereotype.Component;
 import uk.ac.ebi.subs.repository.model.sheets.Row;
 import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.Optional;
 
@@ -23,6 +25,116 @@ public class SheetService {
         this.guessHeader(sheet);
     }
 
+    /**
+     * Builds a sheet from raw rows, pre-processing them as they are read. Gives the same sheet as
+     * {@link #preProcessSheet} would for a sheet holding all the rows, without walking the rows again:
+     * empty rows and comment lines are skipped, the first remaining row becomes the header, and the columns past
+     * the last non-empty cell of any row are cut off at the end. Shorter rows are not padded.
+     * Equal cell values share one string, and each row keeps its cells in an array of exactly the right size,
+     * so large sheets take up far less memory.
+     *
+     * @param rows the cells of each row, in order, such as the records of a CSV parser
+     * @return the pre-processed sheet
+     */
+    public Spreadsheet preProcessRows(Iterable<? extends Iterable<String>> rows) {
+        SheetBuilder sheetBuilder = sheetBuilder();
+
+        for (Iterable<String> cells : rows) {
+            sheetBuilder.addRow(cells);
+        }
+
+        return sheetBuilder.build();
+    }
+
+    /**
+     * Starts a sheet whose rows are pre-processed as {@link #preProcessRows} does, for readers that push their rows
+     * one at a time instead of offering them as an {@link Iterable}.
+     */
+    public SheetBuilder sheetBuilder() {
+        return new SheetBuilder();
+    }
+
+    /**
+     * Collects the rows of one sheet, pre-processing each as it is added. Not thread safe.
+     */
+    public class SheetBuilder {
+
+        private final Spreadsheet sheet = new Spreadsheet();
+        private final SheetCellInterner interner = new SheetCellInterner();
+
+        // the width is worked out before comment lines are dropped, as preProcessSheet does
+        private int width = 0;
+        private boolean padShortRows = false;
+
+        private SheetBuilder() {
+            sheet.setRows(new ArrayList<>());
+        }
+
+        /**
+         * Pads rows that are shorter than the widest row with empty cells, for readers such as the XLSX one that
+         * leave out the empty cells at the end of a row. Without it, short rows are kept as they were read, as
+         * {@link #preProcessSheet} keeps them.
+         */
+        public SheetBuilder padShortRows() {
+            padShortRows = true;
+            return this;
+        }
+
+        public void addRow(Iterable<String> cells) {
+            List<String> rowCells = new ArrayList<>();
+            for (String cell : cells) {
+                rowCells.add(interner.intern(rowCells.size(), cell));
+            }
+            Row row = new Row(rowCells);
+
+            if (row.isEmpty()) {
+                return;
+            }
+
+            Optional<Integer> lastNonEmptyCell = row.columnIndexOflastNonEmptyCell();
+            if (lastNonEmptyCell.isPresent()) {
+                width = Math.max(width, lastNonEmptyCell.get() + 1);
+            }
+
+            if (isfirstCharHash(row)) {
+                return;
+            }
+
+            if (sheet.getHeaderRow() == null && lastNonEmptyCell.isPresent()) {
+                sheet.setHeaderRow(row);
+            } else {
+                sheet.getRows().add(row);
+            }
+        }
+
+        /**
+         * @return the sheet, with every row cut, and padded if asked to, to the width of the widest row
+         */
+        public Spreadsheet build() {
+            if (sheet.getHeaderRow() != null) {
+                fitToWidth(sheet.getHeaderRow(), width, padShortRows);
+            }
+            for (Row row : sheet.getRows()) {
+                fitToWidth(row, width, padShortRows);
+            }
+
+            return sheet;
+        }
+    }
+
+    private static void fitToWidth(Row row, int width, boolean padShortRows) {
+        List<String> cells = row.getCells();
+        if (cells.size() > width) {
+            cells.subList(width, cells.size()).clear();
+        }
+        while (padShortRows && cells.size() < width) {
+            cells.add("");
+        }
+        if (cells instanceof ArrayList) {
+            ((ArrayList<String>) cells).trimToSize();
+        }
+    }
+
     private void dropCommentLines(Spreadsheet sheet) {
         ListIterator<Row> rowIterator = sheet.getRows().listIterator();
 
@@ -0,0 +1,49 @@
+package uk.ac.ebi.subs.api.services;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.csv.CSVParser;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.subs.api.converters.SheetCsvMessageConverter;
+import uk.ac.ebi.subs.api.converters.SheetXlsxReader;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads an uploaded CSV file or Excel workbook into a pre-processed {@link Spreadsheet}.
+ * Rows are pre-processed by the {@link SheetService} as they are read, whichever format they come in.
+ */
+@Service
+@RequiredArgsConstructor
+public class SheetUploadReader {
+
+    @NonNull
+    private SheetService sheetService;
+    @NonNull
+    private SheetCsvMessageConverter sheetCsvMessageConverter;
+    @NonNull
+    private SheetXlsxReader sheetXlsxReader;
+
+    /**
+     * @param body            the uploaded file
+     * @param contentType     the content type of the upload, XLSX workbooks are read as such and anything else as CSV
+     * @param contentEncoding the content encoding of the upload, or null if there is none
+     * @return the sheet, without its submission, checklist and team
+     */
+    public Spreadsheet read(InputStream body, MediaType contentType, String contentEncoding) throws IOException {
+        InputStream content = SheetCsvMessageConverter.decodeBody(body, contentType, contentEncoding);
+
+        if (contentType != null && SheetXlsxReader.XLSX_MEDIA_TYPE.includes(contentType)) {
+            SheetService.SheetBuilder sheetBuilder = sheetService.sheetBuilder().padShortRows();
+            sheetXlsxReader.read(content, sheetBuilder::addRow);
+            return sheetBuilder.build();
+        }
+
+        try (CSVParser csvParser = sheetCsvMessageConverter.parse(content)) {
+            return sheetService.preProcessRows(csvParser);
+        }
+    }
+}
@@ -8,6 +8,12 @@ import uk.ac.ebi.subs.messaging.Exchanges;
 import uk.ac.ebi.subs.repository.model.StoredSubmittable;
 import uk.ac.ebi.subs.validator.data.ValidationEnvelopeToCoordinator;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 
 /**
  * Created by rolando on 09/06/2017.
@@ -19,6 +25,8 @@ public class SubmittableValidationDispatcher {
 
     @Autowired
     private RabbitMessagingTemplate rabbitMessagingTemplate;
+    @Autowired(required = false)
+    private ValidationBatchPublisher validationBatchPublisher;
     private static final String SUBMITTABLE_CREATED_BASE = "usi.submittable.created.";
     private static final String SUBMITTABLE_UPDATED_BASE = "usi.submittable.updated.";
 
@@ -38,6 +46,14 @@ public class SubmittableValidationDispatcher {
         this.rabbitMessagingTemplate = rabbitMessagingTemplate;
     }
 
+    public ValidationBatchPublisher getValidationBatchPublisher() {
+        return validationBatchPublisher;
+    }
+
+    public void setValidationBatchPublisher(ValidationBatchPublisher validationBatchPublisher) {
+        this.validationBatchPublisher = validationBatchPublisher;
+    }
+
     public void validateCreate(StoredSubmittable storedSubmittable) {
         sendEvent(storedSubmittable, SUBMITTABLE_CREATED_BASE);
     }
@@ -46,9 +62,51 @@ public class SubmittableValidationDispatcher {
         sendEvent(storedSubmittable, SUBMITTABLE_UPDATED_BASE);
     }
 
+    /**
+     * Requests validation of many updated submittables at once.
+     * Without a {@link ValidationBatchPublisher}, which is the default, each submittable is sent as by
+     * {@link #validateUpdate}. With one, the envelopes are grouped by routing key and sent in batch messages, which
+     * are all sent before this returns.
+     *
+     * @param storedSubmittables the submittables to validate
+     */
+    public void validateBatch(Collection<? extends StoredSubmittable> storedSubmittables) {
+        if (validationBatchPublisher == null) {
+            storedSubmittables.forEach(this::validateUpdate);
+            return;
+        }
+
+        Map<String, List<ValidationEnvelopeToCoordinator<BaseSubmittable>>> envelopesByRoutingKey = new LinkedHashMap<>();
+
+        for (StoredSubmittable storedSubmittable : storedSubmittables) {
+            ensureBaseSubmittable(storedSubmittable);
+
+            String routingKey = SUBMITTABLE_UPDATED_BASE + submittableQueueSuffix(storedSubmittable);
+
+            envelopesByRoutingKey
+                    .computeIfAbsent(routingKey, key -> new ArrayList<>())
+                    .add(validationEnvelope(storedSubmittable));
+        }
+
+        envelopesByRoutingKey.forEach((routingKey, envelopes) ->
+                validationBatchPublisher.publish(Exchanges.SUBMISSIONS, routingKey, envelopes)
+        );
+    }
+
     protected void sendEvent(StoredSubmittable storedSubmittable, String routingKeyPrefix) {
         ensureBaseSubmittable(storedSubmittable);
 
+        ValidationEnvelopeToCoordinator<BaseSubmittable> validationEnvelope = validationEnvelope(storedSubmittable);
+
+        String routingKey = routingKeyPrefix + submittableQueueSuffix(storedSubmittable);
+
+        rabbitMessagingTemplate.convertAndSend(
+                Exchanges.SUBMISSIONS,
+                routingKey,
+                validationEnvelope);
+    }
+
+    protected ValidationEnvelopeToCoordinator<BaseSubmittable> validationEnvelope(StoredSubmittable storedSubmittable) {
         String dataTypeId = (storedSubmittable.getDataType() == null) ? null : storedSubmittable.getDataType().getId();
         String checklistId = (storedSubmittable.getChecklist() == null) ? null : storedSubmittable.getChecklist().getId();
 
@@ -59,12 +117,7 @@ public class SubmittableValidationDispatcher {
                 checklistId
         );
 
-        String routingKey = routingKeyPrefix + submittableQueueSuffix(storedSubmittable);
-
-        rabbitMessagingTemplate.convertAndSend(
-                Exchanges.SUBMISSIONS,
-                routingKey,
-                validationEnvelope);
+        return validationEnvelope;
     }
 
     protected String submittableQueueSuffix(StoredSubmittable storedSubmittable) {
@@ -0,0 +1,70 @@
+package uk.ac.ebi.subs.api.services;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.core.support.BatchingStrategy;
+import org.springframework.amqp.rabbit.core.support.MessageBatch;
+import org.springframework.amqp.rabbit.core.support.SimpleBatchingStrategy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.api.config.ValidationDispatchConfig;
+
+import java.util.Collection;
+
+/**
+ * This is a Spring @Service component for sending many validation envelopes with few broker round trips.
+ *
+ * Envelopes are packed into batch messages by a {@link SimpleBatchingStrategy}, as a
+ * {@link org.springframework.amqp.rabbit.core.BatchingRabbitTemplate} would, but every call packs its own envelopes
+ * and sends all of its batches before returning. Concurrent sheet loads therefore never send each other's partial
+ * batches. Listener containers on the consuming side must split the batches up again, so the publisher only
+ * exists when {@code usi.validation-dispatch.enabled} is set.
+ */
+@Component
+@ConditionalOnProperty(prefix = "usi.validation-dispatch", name = "enabled", havingValue = "true")
+public class ValidationBatchPublisher {
+
+    /**
+     * Batches are released by {@link #publish}, never on a timer.
+     */
+    private static final long NO_RELEASE_TIMEOUT = 0;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final ValidationDispatchConfig validationDispatchConfig;
+
+    public ValidationBatchPublisher(RabbitTemplate rabbitTemplate, ValidationDispatchConfig validationDispatchConfig) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.validationDispatchConfig = validationDispatchConfig;
+    }
+
+    /**
+     * Sends the payloads in as few batch messages as the batch size and buffer limit allow.
+     *
+     * @param exchange   the exchange to send to
+     * @param routingKey the routing key of every payload
+     * @param payloads   the payloads, converted with the message converter of the {@link RabbitTemplate}
+     */
+    public void publish(String exchange, String routingKey, Collection<?> payloads) {
+        BatchingStrategy batchingStrategy = new SimpleBatchingStrategy(
+                validationDispatchConfig.getBatchSize(),
+                validationDispatchConfig.getBufferLimit(),
+                NO_RELEASE_TIMEOUT
+        );
+
+        for (Object payload : payloads) {
+            Message message = rabbitTemplate.getMessageConverter().toMessage(payload, new MessageProperties());
+            MessageBatch batch = batchingStrategy.addToBatch(exchange, routingKey, message);
+
+            if (batch != null) {
+                send(batch);
+            }
+        }
+
+        batchingStrategy.releaseBatches().forEach(this::send);
+    }
+
+    private void send(MessageBatch batch) {
+        rabbitTemplate.send(batch.getExchange(), batch.getRoutingKey(), batch.getMessage());
+    }
+}
@@ -0,0 +1,88 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.SchemaException;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.repository.model.Checklist;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps the compiled validation schemas of recently used checklists, so the rows of a sheet can be checked against
+ * the schema without loading it again for every row.
+ *
+ * Schemas are keyed by checklist ID and version, so saving an edited checklist makes its old schema unreachable.
+ * Checklists without a version, such as ones written straight to the database, are keyed by their schema instead. Checklists without a schema, or with one that cannot be loaded, have no schema here.
+ * The least recently used schema is evicted when the cache is full.
+ */
+@Component
+@RequiredArgsConstructor
+public class ChecklistSchemaCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChecklistSchemaCache.class);
+
+    @NonNull
+    private SheetLoaderConfig sheetLoaderConfig;
+
+    private final Map<SchemaKey, Optional<Schema>> schemas = Collections.synchronizedMap(
+            new LinkedHashMap<SchemaKey, Optional<Schema>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SchemaKey, Optional<Schema>> eldest) {
+                    return size() > sheetLoaderConfig.getSchemaCacheSize();
+                }
+            }
+    );
+
+    public Optional<Schema> schemaFor(Checklist checklist) {
+        SchemaKey key = new SchemaKey(
+                checklist.getId(),
+                checklist.getVersion(),
+                checklist.getVersion() == null ? checklist.getValidationSchema() : null
+        );
+
+        Optional<Schema> schema = schemas.get(key);
+
+        if (schema == null) {
+            schema = loadSchema(checklist);
+            schemas.put(key, schema);
+        }
+
+        return schema;
+    }
+
+    private static Optional<Schema> loadSchema(Checklist checklist) {
+        String validationSchema = checklist.getValidationSchema();
+
+        if (validationSchema == null || validationSchema.trim().isEmpty()) {
+            return Optional.empty();
+        }
+
+        logger.debug("loading validation schema of checklist {}", checklist.getId());
+
+        try {
+            return Optional.of(SchemaLoader.load(new JSONObject(validationSchema)));
+        } catch (JSONException | SchemaException e) {
+            logger.warn("cannot load the validation schema of checklist {}, rows are left to the validators: {}",
+                    checklist.getId(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Value
+    private static class SchemaKey {
+        private String checklistId;
+        private Long checklistVersion;
+        private String unversionedSchema;
+    }
+}
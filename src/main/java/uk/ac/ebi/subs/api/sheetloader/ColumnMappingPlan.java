@@ -0,0 +1,105 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import uk.ac.ebi.subs.repository.model.templates.Capture;
+import uk.ac.ebi.subs.repository.model.templates.FieldCapture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The result of matching the header row of a sheet against the column captures of a spreadsheet template.
+ *
+ * A plan is immutable once compiled. It holds its own copies of the template captures, so the
+ * {@link uk.ac.ebi.subs.repository.model.templates.Template} of a checklist is never modified, and the same plan
+ * can be used by any number of sheet loads at the same time.
+ */
+public final class ColumnMappingPlan {
+
+    private final List<String> headers;
+    private final List<Capture> captures;
+    private final List<String> displayNames;
+
+    private ColumnMappingPlan(List<String> headers, List<Capture> captures, List<String> displayNames) {
+        this.headers = Collections.unmodifiableList(new ArrayList<>(headers));
+        this.captures = Collections.unmodifiableList(captures);
+        this.displayNames = Collections.unmodifiableList(displayNames);
+    }
+
+    /**
+     * @return the header cells the plan was compiled for
+     */
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the capture to run for each column position, null where the column is ignored
+     */
+    public List<Capture> getCaptures() {
+        return captures;
+    }
+
+    /**
+     * @return the name to use for each column position in error messages, null where the column is ignored
+     */
+    public List<String> getDisplayNames() {
+        return displayNames;
+    }
+
+    /**
+     * @return the position of the column captured into the alias field, or -1 if no column is
+     */
+    public int getAliasPosition() {
+        for (int position = 0; position < captures.size(); position++) {
+            Capture capture = captures.get(position);
+            if (capture instanceof FieldCapture && "alias".equals(((FieldCapture) capture).getFieldName())) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    public static ColumnMappingPlan compile(List<String> headerRowCells, Map<String, Capture> columnCaptures,
+                                            Optional<Capture> optionalDefaultCapture) {
+        Map<String, Capture> columnCapturesWithLowerCaseKeys = columnCaptures.entrySet().stream()
+                .collect(Collectors.toMap(entry -> entry.getKey().toLowerCase(), Map.Entry::getValue));
+
+        List<Capture> capturePositions = new ArrayList<>(Collections.nCopies(headerRowCells.size(), null));
+
+        int position = 0;
+
+        while (position < headerRowCells.size()) {
+
+            String currentHeader = headerRowCells.get(position);
+            currentHeader = currentHeader.trim().toLowerCase();
+
+            Capture templateCapture = columnCapturesWithLowerCaseKeys.get(currentHeader);
+
+            if (templateCapture == null && optionalDefaultCapture.isPresent()) {
+                templateCapture = optionalDefaultCapture.get();
+            }
+
+            if (templateCapture != null) {
+                Capture planCapture = templateCapture.copy();
+                planCapture.setDisplayName(currentHeader);
+                position = planCapture.map(position, capturePositions, headerRowCells);
+            } else {
+                position++;
+            }
+        }
+
+        List<String> displayNames = capturePositions.stream()
+                .map(capture -> capture == null ? null : capture.getDisplayName())
+                .collect(Collectors.toList());
+
+        capturePositions.stream()
+                .filter(capture -> capture != null)
+                .forEach(capture -> capture.setDisplayName(null));
+
+        return new ColumnMappingPlan(headerRowCells, capturePositions, displayNames);
+    }
+}
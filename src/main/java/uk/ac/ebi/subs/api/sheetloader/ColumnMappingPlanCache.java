@@ -0,0 +1,80 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.repository.model.Checklist;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.templates.Template;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps recently used {@link ColumnMappingPlan}s, so sheets uploaded with the same template and header row
+ * do not have to match their headers against the checklist again.
+ *
+ * Plans are keyed by checklist ID, checklist version and the header cells, so saving an edited checklist makes its
+ * old plans unreachable. Checklists without a version are compiled on every call, as there is nothing to tell their
+ * edits apart. The least recently used plan is evicted when the cache is full.
+ */
+@Component
+@RequiredArgsConstructor
+public class ColumnMappingPlanCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnMappingPlanCache.class);
+
+    @NonNull
+    private SheetLoaderConfig sheetLoaderConfig;
+
+    private final Map<PlanKey, ColumnMappingPlan> plans = Collections.synchronizedMap(
+            new LinkedHashMap<PlanKey, ColumnMappingPlan>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PlanKey, ColumnMappingPlan> eldest) {
+                    return size() > sheetLoaderConfig.getMappingPlanCacheSize();
+                }
+            }
+    );
+
+    public ColumnMappingPlan planFor(Checklist checklist, Row headerRow) {
+        if (checklist.getVersion() == null) {
+            return compile(checklist, new ArrayList<>(headerRow.getCells()));
+        }
+
+        PlanKey key = new PlanKey(checklist.getId(), checklist.getVersion(), new ArrayList<>(headerRow.getCells()));
+
+        ColumnMappingPlan plan = plans.get(key);
+
+        if (plan == null) {
+            plan = compile(checklist, key.getHeaders());
+            plans.put(key, plan);
+        }
+
+        return plan;
+    }
+
+    private static ColumnMappingPlan compile(Checklist checklist, List<String> headers) {
+        logger.debug("compiling column mapping plan for checklist {} and headers {}", checklist.getId(), headers);
+
+        Template template = checklist.getSpreadsheetTemplate();
+        return ColumnMappingPlan.compile(
+                headers,
+                template.getColumnCaptures(),
+                Optional.ofNullable(template.getDefaultCapture())
+        );
+    }
+
+    @Value
+    private static class PlanKey {
+        private String checklistId;
+        private Long checklistVersion;
+        private List<String> headers;
+    }
+}
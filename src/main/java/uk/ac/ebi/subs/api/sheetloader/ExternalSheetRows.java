@@ -0,0 +1,28 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Marks a {@link uk.ac.ebi.subs.repository.model.sheets.Spreadsheet} whose rows are kept in {@link SheetRowChunk}s
+ * instead of the sheet document.
+ */
+@Document
+@Data
+public class ExternalSheetRows {
+
+    @Id
+    private String sheetId;
+
+    private int rowCount;
+
+    /**
+     * Number of rows in each {@link SheetRowChunk}, except the last one.
+     */
+    private int chunkSize;
+
+    private Date createdDate;
+}
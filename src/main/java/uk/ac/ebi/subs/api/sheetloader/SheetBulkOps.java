@@ -1,11 +1,28 @@
 package uk.ac.ebi.subs.api.sheetloader;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.rest.core.RepositoryConstraintViolationException;
 import org.springframework.data.util.Pair;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.ObjectError;
 import uk.ac.ebi.subs.repository.model.ProcessingStatus;
@@ -17,13 +34,20 @@ import uk.ac.ebi.subs.repository.repos.submittables.SubmittableRepository;
 import uk.ac.ebi.subs.validator.data.ValidationResult;
 import uk.ac.ebi.subs.validator.repository.ValidationResultRepository;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /**
  * This is a Spring @Service component for bulk operation related to the
@@ -43,6 +67,52 @@ public class SheetBulkOps {
     @NonNull
     private ApplicationEventPublisher applicationEventPublisher;
 
+    @NonNull
+    private MongoTemplate mongoTemplate;
+
+    @NonNull
+    private SheetLoaderConfig sheetLoaderConfig;
+
+    @NonNull
+    private AuditorAware<String> auditorAware;
+
+    @NonNull
+    private ThreadPoolTaskExecutor sheetLookupExecutor;
+
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
+    private static final String ALIAS_FIELD = "alias";
+    private static final String VERSION_FIELD = "version";
+    private static final String CREATED_BY_FIELD = "createdBy";
+    private static final String CREATED_DATE_FIELD = "createdDate";
+    private static final String PROCESSING_STATUS_FIELD = "processingStatus";
+    private static final String VALIDATION_RESULT_FIELD = "validationResult";
+
+    private static final List<String> LOOKUP_FIELDS = Arrays.asList(
+            ALIAS_FIELD, VERSION_FIELD, CREATED_BY_FIELD, CREATED_DATE_FIELD, PROCESSING_STATUS_FIELD, VALIDATION_RESULT_FIELD
+    );
+
+    /**
+     * Derives the ID of a new submittable from the sheet and row it was loaded from.
+     * The same row of the same sheet always gets the same ID.
+     *
+     * @param sheetId  the ID of the sheet
+     * @param rowIndex the index of the row in the sheet
+     * @return the ID for the submittable
+     */
+    public static String rowSubmittableId(String sheetId, int rowIndex) {
+        return derivedId(sheetId + ":" + rowIndex);
+    }
+
+    private static String derivedId(String name) {
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Copies the identity, audit and status references of the stored submittables with the same aliases
+     * onto the submittables of the sheet.
+     * The aliases are looked up in bounded chunks, in parallel, and only the copied fields are read from Mongo.
+     */
     public Collection<Pair<Row, ? extends StoredSubmittable>> lookupExistingEntries(
             Submission submission,Collection<Pair<Row, ? extends StoredSubmittable>> submittables,
             SubmittableRepository<?> repository) {
@@ -54,30 +124,123 @@ public class SheetBulkOps {
                 submittablesByAlias.put(s.getAlias(), s);
             }
         }
-        List<? extends StoredSubmittable> dbSubmittables = repository.findBySubmissionIdAndAliasIn(
-                submission.getId(),
-                submittablesByAlias.keySet()
-        );
 
-        for (StoredSubmittable dbSubmittable : dbSubmittables) {
-            StoredSubmittable sheetSubmittable = submittablesByAlias.get(dbSubmittable.getAlias());
+        if (submittablesByAlias.isEmpty()) {
+            return submittables;
+        }
+
+        Class<?> submittableClass = submittables.iterator().next().getSecond().getClass();
+        List<DBObject> dbSubmittables = findExistingEntries(submission.getId(), submittablesByAlias.keySet(), submittableClass);
+
+        Map<String, ProcessingStatus> processingStatusesById = new HashMap<>();
+        List<String> processingStatusIds = referencedIds(dbSubmittables, PROCESSING_STATUS_FIELD);
+        if (!processingStatusIds.isEmpty()) {
+            processingStatusRepository.findAll(processingStatusIds)
+                    .forEach(processingStatus -> processingStatusesById.put(processingStatus.getId(), processingStatus));
+        }
 
-            sheetSubmittable.setId(dbSubmittable.getId());
-            sheetSubmittable.setVersion(dbSubmittable.getVersion());
-            sheetSubmittable.setCreatedBy(dbSubmittable.getCreatedBy());
-            sheetSubmittable.setCreatedDate(dbSubmittable.getCreatedDate());
-            sheetSubmittable.setProcessingStatus(dbSubmittable.getProcessingStatus());
-            sheetSubmittable.setValidationResult(dbSubmittable.getValidationResult());
-            sheetSubmittable.setSubmission(dbSubmittable.getSubmission());
+        Map<String, ValidationResult> validationResultsById = new HashMap<>();
+        List<String> validationResultIds = referencedIds(dbSubmittables, VALIDATION_RESULT_FIELD);
+        if (!validationResultIds.isEmpty()) {
+            validationResultRepository.findAll(validationResultIds)
+                    .forEach(validationResult -> validationResultsById.put(validationResult.getUuid(), validationResult));
+        }
+
+        for (DBObject dbSubmittable : dbSubmittables) {
+            StoredSubmittable sheetSubmittable = submittablesByAlias.get((String) dbSubmittable.get(ALIAS_FIELD));
+            Number version = (Number) dbSubmittable.get(VERSION_FIELD);
+
+            sheetSubmittable.setId((String) dbSubmittable.get("_id"));
+            sheetSubmittable.setVersion(version == null ? null : version.longValue());
+            sheetSubmittable.setCreatedBy((String) dbSubmittable.get(CREATED_BY_FIELD));
+            sheetSubmittable.setCreatedDate((Date) dbSubmittable.get(CREATED_DATE_FIELD));
+            sheetSubmittable.setProcessingStatus(processingStatusesById.get(referencedId(dbSubmittable, PROCESSING_STATUS_FIELD)));
+            sheetSubmittable.setValidationResult(validationResultsById.get(referencedId(dbSubmittable, VALIDATION_RESULT_FIELD)));
+            sheetSubmittable.setSubmission(submission);
         }
 
         return submittables;
     }
 
+    private List<DBObject> findExistingEntries(String submissionId, Collection<String> aliases, Class<?> submittableClass) {
+        List<List<String>> aliasChunks = new ArrayList<>();
+        List<String> aliasList = new ArrayList<>(aliases);
+        int chunkSize = Math.max(1, sheetLoaderConfig.getLookupChunkSize());
+        for (int i = 0; i < aliasList.size(); i += chunkSize) {
+            aliasChunks.add(aliasList.subList(i, Math.min(i + chunkSize, aliasList.size())));
+        }
+
+        if (aliasChunks.size() == 1) {
+            return findExistingEntriesChunk(submissionId, aliasChunks.get(0), submittableClass);
+        }
+
+        List<Future<List<DBObject>>> futures = aliasChunks.stream()
+                .map(chunk -> sheetLookupExecutor.submit(() -> findExistingEntriesChunk(submissionId, chunk, submittableClass)))
+                .collect(Collectors.toList());
+
+        List<DBObject> dbSubmittables = new ArrayList<>();
+        try {
+            for (Future<List<DBObject>> future : futures) {
+                dbSubmittables.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while looking up existing sheet entries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not look up existing sheet entries", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        return dbSubmittables;
+    }
+
+    private List<DBObject> findExistingEntriesChunk(String submissionId, List<String> aliases, Class<?> submittableClass) {
+        Query query = new Query(Criteria.where("submission.id").is(submissionId).and(ALIAS_FIELD).in(aliases));
+
+        MongoConverter converter = mongoTemplate.getConverter();
+        DBObject mappedQuery = new QueryMapper(converter).getMappedObject(
+                query.getQueryObject(),
+                converter.getMappingContext().getPersistentEntity(submittableClass)
+        );
+
+        DBObject projection = new BasicDBObject();
+        for (String field : LOOKUP_FIELDS) {
+            projection.put(field, 1);
+        }
+
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(submittableClass))
+                .find(mappedQuery, projection)
+                .toArray();
+    }
+
+    private static List<String> referencedIds(List<DBObject> dbSubmittables, String field) {
+        return dbSubmittables.stream()
+                .map(dbSubmittable -> referencedId(dbSubmittable, field))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private static String referencedId(DBObject dbSubmittable, String field) {
+        Object reference = dbSubmittable.get(field);
+        if (reference instanceof DBRef && ((DBRef) reference).getId() != null) {
+            return ((DBRef) reference).getId().toString();
+        }
+        return null;
+    }
+
     public void updateExistingSubmittables(
             Collection<Pair<Row, ? extends StoredSubmittable>> existingSubmittables,
             SubmittableRepository repository) {
 
+        if (sheetLoaderConfig.isBulkWrites()) {
+            bulkUpdateExistingSubmittables(existingSubmittables);
+            return;
+        }
+
         Collection<StoredSubmittable> submittablesToSave = new LinkedList<>();
         for (Pair<Row, ? extends StoredSubmittable> pair : existingSubmittables) {
             pair.getFirst().setProcessed(true);
@@ -89,6 +252,11 @@ public class SheetBulkOps {
 
     public void insertNewSubmittables(Collection<Pair<Row, ? extends StoredSubmittable>> freshSubmittables,
                                       SubmittableRepository repository) {
+        if (sheetLoaderConfig.isBulkWrites()) {
+            bulkInsertNewSubmittables(freshSubmittables);
+            return;
+        }
+
         Collection<ValidationResult> validationResults = new ArrayList<>();
         Collection<ProcessingStatus> processingStatuses = new ArrayList<>();
 
@@ -97,7 +265,9 @@ public class SheetBulkOps {
         for (Pair<Row, ? extends StoredSubmittable> pair : freshSubmittables) {
             Row row = pair.getFirst();
             StoredSubmittable storedSubmittable = pair.getSecond();
-            storedSubmittable.setId(UUID.randomUUID().toString());
+            if (storedSubmittable.getId() == null) {
+                storedSubmittable.setId(UUID.randomUUID().toString());
+            }
             submittablesToSave.add(storedSubmittable);
             validationResults.add(validationResult(storedSubmittable));
             processingStatuses.add(processingStatus(storedSubmittable));
@@ -110,9 +280,240 @@ public class SheetBulkOps {
         repository.insert(submittablesToSave);
     }
 
+    /**
+     * Upserts the submittables with one unordered bulk write. A submittable only replaces the stored document
+     * when that still has the version it was looked up with, otherwise its row gets an error.
+     */
+    private void bulkUpdateExistingSubmittables(
+            Collection<Pair<Row, ? extends StoredSubmittable>> existingSubmittables) {
+        if (existingSubmittables.isEmpty()) {
+            return;
+        }
+
+        String auditor = auditorAware.getCurrentAuditor();
+        Date now = new Date();
+
+        List<Row> rows = new ArrayList<>();
+        BulkOperations bulkOperations = bulkOperationsFor(existingSubmittables);
+
+        for (Pair<Row, ? extends StoredSubmittable> pair : existingSubmittables) {
+            StoredSubmittable storedSubmittable = pair.getSecond();
+            Long expectedVersion = storedSubmittable.getVersion();
+
+            storedSubmittable.setVersion(expectedVersion == null ? 0L : expectedVersion + 1);
+            storedSubmittable.setLastModifiedDate(now);
+            storedSubmittable.setLastModifiedBy(auditor);
+
+            Query query = idIs(storedSubmittable.getId()).addCriteria(Criteria.where(VERSION_FIELD).is(expectedVersion));
+            bulkOperations.upsert(query, replacement(storedSubmittable));
+            rows.add(pair.getFirst());
+        }
+
+        execute(bulkOperations, rows);
+        markStoredRowsProcessed(rows);
+    }
+
+    /**
+     * Upserts the validation results and processing statuses of the new submittables, then the submittables whose
+     * companion documents were stored, each with one unordered bulk write. The companion documents of rows that
+     * failed are removed again.
+     * Upserting makes it safe to store the same rows again after an interrupted load.
+     */
+    private void bulkInsertNewSubmittables(Collection<Pair<Row, ? extends StoredSubmittable>> freshSubmittables) {
+        if (freshSubmittables.isEmpty()) {
+            return;
+        }
+
+        String auditor = auditorAware.getCurrentAuditor();
+        Date now = new Date();
+
+        List<Row> rows = new ArrayList<>();
+        BulkOperations validationResultOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ValidationResult.class);
+        BulkOperations processingStatusOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProcessingStatus.class);
+
+        for (Pair<Row, ? extends StoredSubmittable> pair : freshSubmittables) {
+            StoredSubmittable storedSubmittable = pair.getSecond();
+            if (storedSubmittable.getId() == null) {
+                storedSubmittable.setId(UUID.randomUUID().toString());
+            }
+
+            ValidationResult validationResult = validationResult(storedSubmittable);
+            validationResult.setVersion(0L);
+            validationResultOperations.upsert(idIs(validationResult.getUuid()), replacement(validationResult));
+
+            ProcessingStatus processingStatus = processingStatus(storedSubmittable);
+            processingStatus.setVersion(0L);
+            processingStatusOperations.upsert(idIs(processingStatus.getId()), replacement(processingStatus));
+
+            rows.add(pair.getFirst());
+        }
+
+        execute(validationResultOperations, rows);
+        execute(processingStatusOperations, rows);
+
+        List<Row> submittableRows = new ArrayList<>();
+        BulkOperations submittableOperations = bulkOperationsFor(freshSubmittables);
+
+        for (Pair<Row, ? extends StoredSubmittable> pair : freshSubmittables) {
+            if (pair.getFirst().hasErrors()) {
+                continue;
+            }
+            StoredSubmittable storedSubmittable = pair.getSecond();
+            storedSubmittable.setVersion(0L);
+            storedSubmittable.setCreatedDate(now);
+            storedSubmittable.setCreatedBy(auditor);
+            storedSubmittable.setLastModifiedDate(now);
+            storedSubmittable.setLastModifiedBy(auditor);
+
+            submittableOperations.upsert(idIs(storedSubmittable.getId()), replacement(storedSubmittable));
+            submittableRows.add(pair.getFirst());
+        }
+
+        if (!submittableRows.isEmpty()) {
+            execute(submittableOperations, submittableRows);
+        }
+        removeDependentsOfUnstoredSubmittables(freshSubmittables);
+        markStoredRowsProcessed(rows);
+    }
+
+    /**
+     * Removes the validation results and processing statuses written for submittables that could not be stored,
+     * so that a failed row leaves nothing behind. Those of submittables stored by an earlier attempt are kept.
+     */
+    private void removeDependentsOfUnstoredSubmittables(
+            Collection<Pair<Row, ? extends StoredSubmittable>> freshSubmittables) {
+        List<String> failedIds = freshSubmittables.stream()
+                .filter(pair -> pair.getFirst().hasErrors())
+                .map(pair -> pair.getSecond().getId())
+                .collect(Collectors.toList());
+
+        if (failedIds.isEmpty()) {
+            return;
+        }
+
+        Class<?> submittableClass = freshSubmittables.iterator().next().getSecond().getClass();
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(submittableClass))
+                .find(new BasicDBObject("_id", new BasicDBObject("$in", failedIds)), new BasicDBObject("_id", 1))
+                .toArray()
+                .forEach(dbSubmittable -> failedIds.remove(dbSubmittable.get("_id")));
+
+        if (failedIds.isEmpty()) {
+            return;
+        }
+
+        mongoTemplate.remove(idIn(failedIds.stream().map(SheetBulkOps::validationResultId).collect(Collectors.toList())),
+                ValidationResult.class);
+        mongoTemplate.remove(idIn(failedIds.stream().map(SheetBulkOps::processingStatusId).collect(Collectors.toList())),
+                ProcessingStatus.class);
+    }
+
+    private BulkOperations bulkOperationsFor(Collection<Pair<Row, ? extends StoredSubmittable>> submittables) {
+        Class<?> submittableClass = submittables.iterator().next().getSecond().getClass();
+        return mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, submittableClass);
+    }
+
+    /**
+     * Runs the bulk write and adds an error to the row of each operation that failed.
+     *
+     * @param bulkOperations the bulk write, with one operation per row
+     * @param rows           the rows, in the order of their operations
+     */
+    private void execute(BulkOperations bulkOperations, List<Row> rows) {
+        try {
+            bulkOperations.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                Row row = rows.get(error.getIndex());
+                log.debug("Bulk write of row failed: {}", error);
+
+                if (error.getCode() == DUPLICATE_KEY_ERROR_CODE) {
+                    row.getErrors().add("Could not store row, it was changed by another upload");
+                } else {
+                    row.getErrors().add("Could not store row: " + error.getMessage());
+                }
+                row.setProcessed(false);
+            }
+        }
+    }
+
+    private static void markStoredRowsProcessed(List<Row> rows) {
+        for (Row row : rows) {
+            if (!row.hasErrors()) {
+                row.setProcessed(true);
+            }
+        }
+    }
+
+    /**
+     * Builds an update that makes the stored document match the entity, as a save would.
+     */
+    private Update replacement(Object entity) {
+        MongoConverter converter = mongoTemplate.getConverter();
+
+        BasicDBObject document = new BasicDBObject();
+        converter.write(entity, document);
+
+        Update update = Update.fromDBObject(document, "_id");
+
+        MongoPersistentEntity<?> persistentEntity = converter.getMappingContext().getPersistentEntity(entity.getClass());
+        persistentEntity.doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> {
+            if (!property.isIdProperty() && !document.containsField(property.getFieldName())) {
+                update.unset(property.getFieldName());
+            }
+        });
+
+        return update;
+    }
+
+    /**
+     * Removes whatever an interrupted {@link #insertNewSubmittables} call stored for these submittables,
+     * so they can be inserted again with the same IDs.
+     * The submittables must already have the IDs they will be inserted with.
+     */
+    public void removePartialInserts(Collection<Pair<Row, ? extends StoredSubmittable>> freshSubmittables,
+                                     SubmittableRepository repository) {
+        if (freshSubmittables.isEmpty()) {
+            return;
+        }
+
+        List<String> submittableIds = freshSubmittables.stream()
+                .map(pair -> pair.getSecond().getId())
+                .collect(Collectors.toList());
+
+        List<String> validationResultIds = submittableIds.stream()
+                .map(SheetBulkOps::validationResultId)
+                .collect(Collectors.toList());
+
+        List<String> processingStatusIds = submittableIds.stream()
+                .map(SheetBulkOps::processingStatusId)
+                .collect(Collectors.toList());
+
+        Class<?> submittableClass = freshSubmittables.iterator().next().getSecond().getClass();
+
+        mongoTemplate.remove(idIn(submittableIds), submittableClass);
+        mongoTemplate.remove(idIn(validationResultIds), ValidationResult.class);
+        mongoTemplate.remove(idIn(processingStatusIds), ProcessingStatus.class);
+    }
+
+    private static Query idIs(String id) {
+        return new Query(Criteria.where("_id").is(id));
+    }
+
+    private static Query idIn(Collection<String> ids) {
+        return new Query(Criteria.where("_id").in(ids));
+    }
+
+    private static String validationResultId(String submittableId) {
+        return derivedId("validationResult:" + submittableId);
+    }
+
+    private static String processingStatusId(String submittableId) {
+        return derivedId("processingStatus:" + submittableId);
+    }
+
     private ProcessingStatus processingStatus(StoredSubmittable storedSubmittable) {
         ProcessingStatus processingStatus = ProcessingStatus.createForSubmittable(storedSubmittable);
-        processingStatus.setId(UUID.randomUUID().toString());
+        processingStatus.setId(processingStatusId(storedSubmittable.getId()));
 
         storedSubmittable.setProcessingStatus(processingStatus);
 
@@ -122,7 +523,7 @@ public class SheetBulkOps {
     private ValidationResult validationResult(StoredSubmittable storedSubmittable) {
         ValidationResult validationResult = new ValidationResult();
         validationResult.setEntityUuid(storedSubmittable.getId());
-        validationResult.setUuid(UUID.randomUUID().toString());
+        validationResult.setUuid(validationResultId(storedSubmittable.getId()));
         validationResult.setDataTypeId(storedSubmittable.getDataType().getId());
         validationResult.setEntityType(storedSubmittable.getDataType().getSubmittableClassName());
 
@@ -2,44 +2,121 @@ package uk.ac.ebi.subs.api.sheetloader;
 
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.repository.model.sheets.SheetStatusEnum;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
 import uk.ac.ebi.subs.repository.repos.SpreadsheetRepository;
 
+import javax.annotation.PostConstruct;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * The batch loading process leaves processed batches in the db
  * We need them in the short term, so the UI can look up progress, but we don't need them in the long term.
  *
- * Every few hours, we can remove old completed batches from the db.
+ * Completed sheets are expired by Mongo, through a TTL index on their last modification date that only covers
+ * completed sheets. The index is created at start up, and recreated if the retention has changed, and sheets are
+ * kept for {@link SheetLoaderConfig#getCompletedSheetRetentionDays()} days. If the index cannot be created, the sweep
+ * below removes completed sheets past their retention instead.
  *
- * At the moment, it's every 4 hours, remove completed records over a week old
+ * Every few hours, we remove the external rows and the load progress of sheets that have been expired, and the
+ * row hashes of submissions that have been deleted.
  */
 @Component
 @RequiredArgsConstructor
 public class SheetCleanupTask {
 
+    private static final Logger logger = LoggerFactory.getLogger(SheetCleanupTask.class);
+
     private static final long FOUR_HOUR_IN_MILLIS = 1000l * 60 * 60 * 4;
 
+    static final String COMPLETED_SHEET_EXPIRY_INDEX = "completedSheetExpiry";
+
+    @NonNull
+    private MongoTemplate mongoTemplate;
+
     @NonNull
     private SpreadsheetRepository spreadsheetRepository;
 
+    @NonNull
+    private SheetRowStore sheetRowStore;
+
+    @NonNull
+    private SheetLoadProgressService sheetLoadProgressService;
+
+    @NonNull
+    private SheetRowHashService sheetRowHashService;
+
+    @NonNull
+    private SheetLoaderConfig sheetLoaderConfig;
+
+    /**
+     * Whether completed sheets are expired by the TTL index. If not, the scheduled sweep removes them instead.
+     */
+    private volatile boolean completedSheetExpiryIndexed = false;
+
+    @PostConstruct
+    public void ensureCompletedSheetExpiry() {
+        Index completedSheetExpiry = new Index()
+                .on("lastModifiedDate", Sort.Direction.ASC)
+                .named(COMPLETED_SHEET_EXPIRY_INDEX)
+                .expire(sheetLoaderConfig.getCompletedSheetRetentionDays(), TimeUnit.DAYS)
+                .partial(PartialIndexFilter.of(Criteria.where("status").is(SheetStatusEnum.Completed.name())));
+
+        IndexOperations indexOperations = mongoTemplate.indexOps(Spreadsheet.class);
+
+        try {
+            indexOperations.ensureIndex(completedSheetExpiry);
+            completedSheetExpiryIndexed = true;
+            return;
+        } catch (DataAccessException e) {
+            // typically the retention has changed, which needs the old index to be dropped first
+            logger.info("recreating the {} index: {}", COMPLETED_SHEET_EXPIRY_INDEX, e.getMessage());
+        }
+
+        try {
+            indexOperations.dropIndex(COMPLETED_SHEET_EXPIRY_INDEX);
+            indexOperations.ensureIndex(completedSheetExpiry);
+            completedSheetExpiryIndexed = true;
+        } catch (DataAccessException e) {
+            logger.error("cannot create the {} index, completed sheets will be removed by the cleanup sweep: {}",
+                    COMPLETED_SHEET_EXPIRY_INDEX, e.getMessage());
+        }
+    }
 
     @Scheduled(fixedDelay = FOUR_HOUR_IN_MILLIS, initialDelay = FOUR_HOUR_IN_MILLIS)
     public void cleanUpOldSubmittableBatches(){
 
+        if (!completedSheetExpiryIndexed) {
+            removeExpiredCompletedSheets();
+        }
+
+        sheetRowStore.removeRowsOfDeletedSheets();
+        sheetLoadProgressService.removeProgressOfDeletedSheets();
+        sheetRowHashService.removeHashesOfDeletedSubmissions();
+
+    }
+
+    private void removeExpiredCompletedSheets() {
         Calendar cal = new GregorianCalendar();
-        cal.add(Calendar.DAY_OF_MONTH, -7);
-        Date sevenDaysAgo = cal.getTime();
+        cal.add(Calendar.DAY_OF_MONTH, -sheetLoaderConfig.getCompletedSheetRetentionDays());
 
         spreadsheetRepository.removeByLastModifiedDateBeforeAndStatus(
-                sevenDaysAgo,
-                "Completed"
+                cal.getTime(),
+                SheetStatusEnum.Completed.name()
         );
-
     }
 }
@@ -0,0 +1,49 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.Builder;
+import lombok.Value;
+import uk.ac.ebi.subs.repository.model.Checklist;
+import uk.ac.ebi.subs.repository.model.DataType;
+import uk.ac.ebi.subs.repository.model.StoredSubmittable;
+import uk.ac.ebi.subs.repository.model.Submission;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+import uk.ac.ebi.subs.repository.repos.submittables.SubmittableRepository;
+
+import java.util.Set;
+
+/**
+ * Everything the {@link SheetLoaderService} resolves once per {@link Spreadsheet} before it starts
+ * working through the rows chunk by chunk.
+ */
+@Value
+@Builder
+class SheetLoadContext {
+
+    private Spreadsheet sheet;
+    private Checklist checklist;
+    private DataType dataType;
+    private Submission submission;
+    private Class<? extends StoredSubmittable> targetTypeClass;
+    private SubmittableRepository repository;
+    private ColumnMappingPlan columnMappingPlan;
+
+    /**
+     * The shard being loaded, or null when the whole sheet is loaded by one node.
+     */
+    private SheetLoadShard shard;
+
+    /**
+     * The attempt holding the lease of the shard, or null when the whole sheet is loaded by one node.
+     */
+    private String shardLeaseOwner;
+
+    /**
+     * Whether the rows are kept by the {@link SheetRowStore} outside the sheet document.
+     */
+    private boolean externalRows;
+
+    /**
+     * The aliases of every row of the sheet, or null when they are not at hand or not needed.
+     */
+    private Set<String> sheetAliases;
+}
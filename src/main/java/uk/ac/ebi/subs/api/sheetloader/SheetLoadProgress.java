@@ -0,0 +1,105 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks how far the {@link SheetLoaderService} got with loading a
+ * {@link uk.ac.ebi.subs.repository.model.sheets.Spreadsheet}. A redelivered load resumes after the last
+ * completed chunk, and clients can follow a load without fetching the rows of the sheet.
+ */
+@Document
+@Data
+public class SheetLoadProgress {
+
+    @Id
+    private String sheetId;
+
+    private String submissionId;
+
+    private SheetLoadStage stage;
+
+    /**
+     * When the load entered each stage.
+     */
+    private Map<SheetLoadStage, Date> stageTimestamps = new LinkedHashMap<>();
+
+    /**
+     * Number of rows in the sheet.
+     */
+    private int totalRows;
+
+    /**
+     * Number of rows, counted from the start of the sheet, that have been fully loaded.
+     */
+    private int completedRows;
+
+    /**
+     * Number of rows stored as submittables.
+     */
+    private int processedRows;
+
+    /**
+     * Number of rows that could not be stored because of errors.
+     */
+    private int failedRows;
+
+    /**
+     * Number of rows that were not stored again because they had not changed since they were last loaded.
+     */
+    private int skippedRows;
+
+    /**
+     * Number of times loading of the sheet has been started.
+     */
+    private int attempts;
+
+    /**
+     * Number of shards of a sharded load, 0 when the sheet is loaded by one node.
+     */
+    private int shardCount;
+
+    /**
+     * Number of rows completed within each shard, keyed by shard index.
+     */
+    private Map<String, Integer> shardCompletedRows = new HashMap<>();
+
+    /**
+     * Number of times loading of each shard has been started, keyed by shard index.
+     */
+    private Map<String, Integer> shardAttempts = new HashMap<>();
+
+    /**
+     * The attempt that currently loads each shard, keyed by shard index. A shard is only loaded by the attempt
+     * holding its lease.
+     */
+    private Map<String, ShardLease> shardLeases = new HashMap<>();
+
+    /**
+     * Indexes of the shards that have been fully loaded.
+     */
+    private Set<Integer> completedShards = new HashSet<>();
+
+    /**
+     * Why the load failed, when it is in the {@link SheetLoadStage#Failed} stage.
+     */
+    private String failureMessage;
+
+    private Date lastModifiedDate;
+
+    @Data
+    public static class ShardLease {
+
+        private String owner;
+
+        private Date expiresAt;
+    }
+}
@@ -0,0 +1,320 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.subs.repository.model.sheets.SheetStatusEnum;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+/**
+ * Reads and writes the {@link SheetLoadProgress} of sheet loads.
+ * Progress is written with targeted updates, so it never conflicts with saves of the versioned sheet itself.
+ */
+@Service
+@RequiredArgsConstructor
+public class SheetLoadProgressService {
+
+    @NonNull
+    private MongoTemplate mongoTemplate;
+    @NonNull
+    private SheetLoaderConfig sheetLoaderConfig;
+
+    /**
+     * Registers a new attempt to load a sheet.
+     *
+     * @param sheet     the sheet about to be loaded
+     * @param totalRows the number of rows in the sheet
+     * @return the progress of the sheet, including the rows completed by earlier attempts
+     */
+    public SheetLoadProgress startAttempt(Spreadsheet sheet, int totalRows) {
+        Date now = new Date();
+
+        Update update = new Update();
+        update.inc("attempts", 1);
+        update.set("submissionId", sheet.getSubmissionId());
+        update.set("totalRows", totalRows);
+        update.set("stage", SheetLoadStage.Loading);
+        update.set(stageTimestampField(SheetLoadStage.Loading), now);
+        update.set("lastModifiedDate", now);
+
+        FindAndModifyOptions options = new FindAndModifyOptions();
+        options.upsert(true);
+        options.returnNew(true);
+
+        return mongoTemplate.findAndModify(bySheetId(sheet.getId()), update, options, SheetLoadProgress.class);
+    }
+
+    /**
+     * Records that a chunk of rows has been loaded.
+     *
+     * @param sheetId       the ID of the sheet
+     * @param completedRows number of rows, counted from the start of the sheet, that are now fully loaded
+     * @param processedRows number of rows in the chunk that were stored
+     * @param failedRows    number of rows in the chunk that had errors
+     * @param skippedRows   number of rows in the chunk that were skipped because they had not changed
+     */
+    public void recordChunk(String sheetId, int completedRows, int processedRows, int failedRows, int skippedRows) {
+        Update update = new Update();
+        update.set("completedRows", completedRows);
+        update.inc("processedRows", processedRows);
+        update.inc("failedRows", failedRows);
+        update.inc("skippedRows", skippedRows);
+        update.set("lastModifiedDate", new Date());
+
+        mongoTemplate.upsert(bySheetId(sheetId), update, SheetLoadProgress.class);
+    }
+
+    /**
+     * Registers the start of a sharded load, before its shards are published. Only the first call for a sheet
+     * succeeds, so a redelivered sheet message does not publish the shards again.
+     *
+     * @param sheet      the sheet about to be loaded
+     * @param totalRows  the number of rows in the sheet
+     * @param shardCount the number of shards the sheet has been split into
+     * @return false if the shards of the sheet have already been published
+     */
+    public boolean startShardedLoad(Spreadsheet sheet, int totalRows, int shardCount) {
+        Date now = new Date();
+
+        Update update = new Update();
+        update.inc("attempts", 1);
+        update.set("submissionId", sheet.getSubmissionId());
+        update.set("totalRows", totalRows);
+        update.set("shardCount", shardCount);
+        update.set("stage", SheetLoadStage.Loading);
+        update.set(stageTimestampField(SheetLoadStage.Loading), now);
+        update.set("lastModifiedDate", now);
+
+        Query notSharded = bySheetId(sheet.getId());
+        notSharded.addCriteria(Criteria.where("shardCount").not().gt(0));
+
+        try {
+            mongoTemplate.upsert(notSharded, update, SheetLoadProgress.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // the progress exists, but already has its shards
+            return false;
+        }
+    }
+
+    /**
+     * Registers a new attempt to load a shard, and takes the lease of the shard for it. Only one attempt at a time
+     * holds the lease of a shard. It lapses after {@link SheetLoaderConfig#getShardLeaseMillis()}, unless the
+     * attempt renews it by recording a chunk.
+     *
+     * @param shard      the shard about to be loaded
+     * @param leaseOwner identifies the attempt
+     * @return the progress of the sheet, including the rows of the shard completed by earlier attempts, or null if
+     * another attempt holds the lease of the shard, or the shard has been completed
+     */
+    public SheetLoadProgress startShardAttempt(SheetLoadShard shard, String leaseOwner) {
+        Date now = new Date();
+        String shardKey = Integer.toString(shard.getShardIndex());
+
+        Query claimable = bySheetId(shard.getSheetId());
+        claimable.addCriteria(Criteria.where("completedShards").ne(shard.getShardIndex()));
+        claimable.addCriteria(Criteria.where(shardLeaseField(shardKey) + ".expiresAt").not().gte(now));
+
+        Update update = new Update();
+        update.inc("shardAttempts." + shardKey, 1);
+        update.set(shardLeaseField(shardKey), shardLease(leaseOwner, now));
+        update.set("lastModifiedDate", now);
+
+        FindAndModifyOptions options = new FindAndModifyOptions();
+        options.returnNew(true);
+
+        return mongoTemplate.findAndModify(claimable, update, options, SheetLoadProgress.class);
+    }
+
+    /**
+     * Records that a chunk of rows of a shard has been loaded, and renews the lease of the shard.
+     *
+     * @param shard              the shard the chunk belongs to
+     * @param leaseOwner         the attempt that loaded the chunk
+     * @param shardCompletedRows number of rows, counted from the start of the shard, that are now fully loaded
+     * @param chunkRows          number of rows in the chunk
+     * @param processedRows      number of rows in the chunk that were stored
+     * @param failedRows         number of rows in the chunk that had errors
+     * @param skippedRows        number of rows in the chunk that were skipped because they had not changed
+     * @return false if the attempt no longer holds the lease of the shard, in which case nothing is recorded
+     */
+    public boolean recordShardChunk(SheetLoadShard shard, String leaseOwner, int shardCompletedRows, int chunkRows,
+                                    int processedRows, int failedRows, int skippedRows) {
+        Date now = new Date();
+        String shardKey = Integer.toString(shard.getShardIndex());
+
+        Query leaseHeld = bySheetId(shard.getSheetId());
+        leaseHeld.addCriteria(Criteria.where(shardLeaseField(shardKey) + ".owner").is(leaseOwner));
+
+        Update update = new Update();
+        update.set("shardCompletedRows." + shardKey, shardCompletedRows);
+        update.inc("completedRows", chunkRows);
+        update.inc("processedRows", processedRows);
+        update.inc("failedRows", failedRows);
+        update.inc("skippedRows", skippedRows);
+        update.set(shardLeaseField(shardKey), shardLease(leaseOwner, now));
+        update.set("lastModifiedDate", now);
+
+        return mongoTemplate.updateFirst(leaseHeld, update, SheetLoadProgress.class).getN() > 0;
+    }
+
+    /**
+     * Records that a shard has been fully loaded. Recording the same shard twice has no further effect.
+     *
+     * @return true if every shard of the sheet has now been loaded
+     */
+    public boolean recordShardCompleted(SheetLoadShard shard) {
+        Update update = new Update();
+        update.addToSet("completedShards", shard.getShardIndex());
+        update.unset(shardLeaseField(Integer.toString(shard.getShardIndex())));
+        update.set("lastModifiedDate", new Date());
+
+        FindAndModifyOptions options = new FindAndModifyOptions();
+        options.upsert(true);
+        options.returnNew(true);
+
+        SheetLoadProgress progress = mongoTemplate.findAndModify(
+                bySheetId(shard.getSheetId()), update, options, SheetLoadProgress.class
+        );
+
+        return progress.getCompletedShards().size() >= shard.getShardCount();
+    }
+
+    /**
+     * Registers an upload that has been accepted, but whose rows are read later.
+     *
+     * @param sheet the sheet the upload is for, without rows
+     */
+    public void markStaged(Spreadsheet sheet) {
+        Date now = new Date();
+
+        Update update = new Update();
+        update.set("submissionId", sheet.getSubmissionId());
+        update.set("stage", SheetLoadStage.Staged);
+        update.set(stageTimestampField(SheetLoadStage.Staged), now);
+        update.set("lastModifiedDate", now);
+
+        mongoTemplate.upsert(bySheetId(sheet.getId()), update, SheetLoadProgress.class);
+    }
+
+    /**
+     * Records that the upload of a sheet could not be read, so the sheet will not be loaded.
+     *
+     * @param sheetId        the ID of the sheet
+     * @param failureMessage why the upload could not be read
+     */
+    public void markFailed(String sheetId, String failureMessage) {
+        Date now = new Date();
+
+        Update update = new Update();
+        update.set("stage", SheetLoadStage.Failed);
+        update.set(stageTimestampField(SheetLoadStage.Failed), now);
+        update.set("failureMessage", failureMessage);
+        update.set("lastModifiedDate", now);
+
+        mongoTemplate.upsert(bySheetId(sheetId), update, SheetLoadProgress.class);
+    }
+
+    public void markCompleted(String sheetId) {
+        Date now = new Date();
+
+        Update update = new Update();
+        update.set("stage", SheetLoadStage.Completed);
+        update.set(stageTimestampField(SheetLoadStage.Completed), now);
+        update.set("lastModifiedDate", now);
+
+        mongoTemplate.upsert(bySheetId(sheetId), update, SheetLoadProgress.class);
+    }
+
+    /**
+     * Removes the progress of sheets that no longer exist, such as completed sheets that have expired.
+     * Progress that changed within the last day is kept, as its sheet may still be about to be stored.
+     */
+    public void removeProgressOfDeletedSheets() {
+        Calendar cal = new GregorianCalendar();
+        cal.add(Calendar.DAY_OF_MONTH, -1);
+
+        Query oldProgress = new Query(Criteria.where("lastModifiedDate").lt(cal.getTime()));
+        oldProgress.fields().include("_id");
+
+        for (SheetLoadProgress progress : mongoTemplate.find(oldProgress, SheetLoadProgress.class)) {
+            if (!mongoTemplate.exists(bySheetId(progress.getSheetId()), Spreadsheet.class)) {
+                mongoTemplate.remove(bySheetId(progress.getSheetId()), SheetLoadProgress.class);
+            }
+        }
+    }
+
+    /**
+     * Finds the progress of a sheet. Sheets that are not being loaded yet get a progress in the
+     * {@link SheetLoadStage#Queued} stage, built from the sheet without reading its rows.
+     *
+     * @param sheetId the ID of the sheet
+     * @return the progress, or null if there is no such sheet
+     */
+    public SheetLoadProgress findProgress(String sheetId) {
+        SheetLoadProgress progress = mongoTemplate.findOne(bySheetId(sheetId), SheetLoadProgress.class);
+
+        if (progress != null) {
+            return progress;
+        }
+
+        Spreadsheet sheet = findSheetWithoutRows(sheetId);
+
+        if (sheet == null) {
+            return null;
+        }
+
+        progress = new SheetLoadProgress();
+        progress.setSheetId(sheetId);
+        progress.setSubmissionId(sheet.getSubmissionId());
+        progress.setStage(
+                SheetStatusEnum.Completed.equals(sheet.getStatus()) ? SheetLoadStage.Completed : SheetLoadStage.Queued
+        );
+        progress.getStageTimestamps().put(SheetLoadStage.Queued, sheet.getCreatedDate());
+        progress.setLastModifiedDate(sheet.getCreatedDate());
+
+        return progress;
+    }
+
+    /**
+     * Reads a sheet without its rows, which are most of its size.
+     *
+     * @param sheetId the ID of the sheet
+     * @return the sheet with null rows, or null if there is no such sheet
+     */
+    public Spreadsheet findSheetWithoutRows(String sheetId) {
+        Query sheetQuery = bySheetId(sheetId);
+        sheetQuery.fields().exclude("rows");
+
+        return mongoTemplate.findOne(sheetQuery, Spreadsheet.class);
+    }
+
+    private SheetLoadProgress.ShardLease shardLease(String leaseOwner, Date now) {
+        SheetLoadProgress.ShardLease lease = new SheetLoadProgress.ShardLease();
+        lease.setOwner(leaseOwner);
+        lease.setExpiresAt(new Date(now.getTime() + sheetLoaderConfig.getShardLeaseMillis()));
+        return lease;
+    }
+
+    private String shardLeaseField(String shardKey) {
+        return "shardLeases." + shardKey;
+    }
+
+    private String stageTimestampField(SheetLoadStage stage) {
+        return "stageTimestamps." + stage.name();
+    }
+
+    private Query bySheetId(String sheetId) {
+        return new Query(Criteria.where("_id").is(sheetId));
+    }
+}
@@ -0,0 +1,106 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams the {@link SheetLoadProgress} of a sheet as server-sent events.
+ *
+ * Each stream polls the small progress document, not the sheet, and only sends an event when the progress has
+ * changed. The stream is closed once the load is completed.
+ */
+@Component
+public class SheetLoadProgressStreamer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SheetLoadProgressStreamer.class);
+
+    private static final String PROGRESS_EVENT_NAME = "progress";
+
+    private final SheetLoadProgressService sheetLoadProgressService;
+    private final SheetLoaderConfig sheetLoaderConfig;
+    private final ScheduledExecutorService pollScheduler;
+
+    public SheetLoadProgressStreamer(SheetLoadProgressService sheetLoadProgressService,
+                                     SheetLoaderConfig sheetLoaderConfig) {
+        this.sheetLoadProgressService = sheetLoadProgressService;
+        this.sheetLoaderConfig = sheetLoaderConfig;
+        this.pollScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sheet-progress-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public SseEmitter stream(String sheetId) {
+        SseEmitter emitter = new SseEmitter(sheetLoaderConfig.getProgressStreamTimeoutMillis());
+
+        AtomicReference<ScheduledFuture<?>> pollTask = new AtomicReference<>();
+        AtomicReference<Date> lastSent = new AtomicReference<>();
+
+        Runnable poll = () -> {
+            try {
+                SheetLoadProgress progress = sheetLoadProgressService.findProgress(sheetId);
+
+                if (progress == null) {
+                    stop(pollTask);
+                    emitter.complete();
+                    return;
+                }
+
+                if (lastSent.get() == null || !Objects.equals(lastSent.get(), progress.getLastModifiedDate())) {
+                    emitter.send(SseEmitter.event()
+                            .name(PROGRESS_EVENT_NAME)
+                            .data(progress, MediaType.APPLICATION_JSON));
+                    lastSent.set(progress.getLastModifiedDate() == null ? new Date(0) : progress.getLastModifiedDate());
+                }
+
+                if (SheetLoadStage.Completed.equals(progress.getStage()) || SheetLoadStage.Failed.equals(progress.getStage())) {
+                    stop(pollTask);
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("progress stream for sheet {} closed: {}", sheetId, e.getMessage());
+                stop(pollTask);
+                emitter.completeWithError(e);
+            } catch (RuntimeException e) {
+                logger.warn("failed to poll progress of sheet " + sheetId, e);
+                stop(pollTask);
+                emitter.completeWithError(e);
+            }
+        };
+
+        emitter.onCompletion(() -> stop(pollTask));
+        emitter.onTimeout(() -> stop(pollTask));
+
+        pollTask.set(pollScheduler.scheduleWithFixedDelay(
+                poll, 0, sheetLoaderConfig.getProgressPollMillis(), TimeUnit.MILLISECONDS
+        ));
+
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pollScheduler.shutdownNow();
+    }
+
+    private void stop(AtomicReference<ScheduledFuture<?>> pollTask) {
+        ScheduledFuture<?> task = pollTask.get();
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+}
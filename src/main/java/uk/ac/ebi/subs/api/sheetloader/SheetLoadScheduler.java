@@ -0,0 +1,165 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which queued sheet load runs next on this node, so that one team uploading many sheets cannot hold up
+ * the sheets of every other team.
+ *
+ * The sheet queue consumers hand their loads over with {@link #submit} without waiting for them, so the broker keeps
+ * delivering the sheets of every team while loads wait here. Each team has its own queue.
+ * At most {@link SheetLoaderConfig#getMaxConcurrentLoads()} loads run at once on the {@code sheetLoadExecutor},
+ * and at most {@link SheetLoaderConfig#getMaxConcurrentLoadsPerTeam()} of them for the same team. When a slot frees
+ * up, it goes to the team with the fewest loads running, and within that team to the load that has waited longest.
+ * The messages of loads are only acknowledged once the load has finished, so the broker redelivers the loads queued or
+ * running here if this node stops.
+ */
+@Component
+@RequiredArgsConstructor
+public class SheetLoadScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SheetLoadScheduler.class);
+
+    static final String QUEUE_WAIT_TIMER = "sheet.loader.queue.wait";
+    static final String QUEUED_LOADS_GAUGE = "sheet.loader.loads.queued";
+    static final String RUNNING_LOADS_GAUGE = "sheet.loader.loads.running";
+
+    @NonNull
+    private SheetLoaderConfig sheetLoaderConfig;
+    @NonNull
+    private MeterRegistry meterRegistry;
+    @NonNull
+    private ThreadPoolTaskExecutor sheetLoadExecutor;
+
+    private final Map<String, LinkedList<QueuedLoad>> queuedLoadsByTeam = new LinkedHashMap<>();
+    private final Map<String, Integer> runningLoadsByTeam = new HashMap<>();
+    private int queuedLoads = 0;
+    private int runningLoads = 0;
+
+    @PostConstruct
+    public void registerGauges() {
+        meterRegistry.gauge(QUEUED_LOADS_GAUGE, this, SheetLoadScheduler::queuedLoadCount);
+        meterRegistry.gauge(RUNNING_LOADS_GAUGE, this, SheetLoadScheduler::runningLoadCount);
+    }
+
+    /**
+     * Queues a load behind the other loads of its team. It runs on the {@code sheetLoadExecutor} once it gets a
+     * fair turn.
+     *
+     * @param teamName    the team that owns the sheet
+     * @param queuedSince when the sheet started waiting to be loaded, used for the queue wait metric
+     * @param load        the load to run, which acknowledges or rejects its own message
+     */
+    public void submit(String teamName, Date queuedSince, Runnable load) {
+        long enqueuedAt = queuedSince == null ? System.currentTimeMillis() : queuedSince.getTime();
+
+        synchronized (this) {
+            queuedLoadsByTeam.computeIfAbsent(teamName, team -> new LinkedList<>())
+                    .add(new QueuedLoad(teamName, enqueuedAt, load));
+            queuedLoads++;
+
+            startQueuedLoads();
+        }
+    }
+
+    synchronized int queuedLoadCount() {
+        return queuedLoads;
+    }
+
+    synchronized int runningLoadCount() {
+        return runningLoads;
+    }
+
+    private void startQueuedLoads() {
+        while (runningLoads < sheetLoaderConfig.getMaxConcurrentLoads()) {
+            QueuedLoad next = nextFairLoad();
+
+            if (next == null) {
+                break;
+            }
+
+            LinkedList<QueuedLoad> teamQueue = queuedLoadsByTeam.get(next.teamName);
+            teamQueue.removeFirst();
+            if (teamQueue.isEmpty()) {
+                queuedLoadsByTeam.remove(next.teamName);
+            }
+            queuedLoads--;
+            runningLoads++;
+            runningLoadsByTeam.merge(next.teamName, 1, Integer::sum);
+
+            sheetLoadExecutor.execute(() -> run(next));
+        }
+    }
+
+    private void run(QueuedLoad queuedLoad) {
+        long waitMillis = System.currentTimeMillis() - queuedLoad.enqueuedAt;
+        meterRegistry.timer(QUEUE_WAIT_TIMER).record(waitMillis, TimeUnit.MILLISECONDS);
+        logger.debug("sheet load for team {} started after {} ms", queuedLoad.teamName, waitMillis);
+
+        try {
+            queuedLoad.load.run();
+        } catch (RuntimeException e) {
+            // the load has already rejected its message, this only keeps the slot going
+            logger.error("sheet load for team {} failed", queuedLoad.teamName, e);
+        } finally {
+            synchronized (this) {
+                runningLoads--;
+                runningLoadsByTeam.merge(queuedLoad.teamName, -1, Integer::sum);
+                runningLoadsByTeam.remove(queuedLoad.teamName, 0);
+
+                startQueuedLoads();
+            }
+        }
+    }
+
+    /**
+     * @return the longest waiting load of the team with the fewest running loads, skipping teams at their limit
+     */
+    private QueuedLoad nextFairLoad() {
+        QueuedLoad next = null;
+        int nextTeamRunning = Integer.MAX_VALUE;
+
+        for (LinkedList<QueuedLoad> teamQueue : queuedLoadsByTeam.values()) {
+            QueuedLoad candidate = teamQueue.getFirst();
+            int teamRunning = runningLoadsByTeam.getOrDefault(candidate.teamName, 0);
+
+            if (teamRunning >= sheetLoaderConfig.getMaxConcurrentLoadsPerTeam()) {
+                continue;
+            }
+
+            if (teamRunning < nextTeamRunning
+                    || (teamRunning == nextTeamRunning && candidate.enqueuedAt < next.enqueuedAt)) {
+                next = candidate;
+                nextTeamRunning = teamRunning;
+            }
+        }
+
+        return next;
+    }
+
+    private static class QueuedLoad {
+        private final String teamName;
+        private final long enqueuedAt;
+        private final Runnable load;
+
+        private QueuedLoad(String teamName, long enqueuedAt, Runnable load) {
+            this.teamName = teamName;
+            this.enqueuedAt = enqueuedAt;
+            this.load = load;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Message asking any API node to load one range of rows of a {@link uk.ac.ebi.subs.repository.model.sheets.Spreadsheet}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SheetLoadShard {
+
+    private String sheetId;
+
+    /**
+     * Index of the first row of the shard, inclusive.
+     */
+    private int fromRow;
+
+    /**
+     * Index of the last row of the shard, exclusive.
+     */
+    private int toRow;
+
+    private int shardIndex;
+
+    private int shardCount;
+
+    public int size() {
+        return toRow - fromRow;
+    }
+}
@@ -0,0 +1,18 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+/**
+ * The stages a {@link uk.ac.ebi.subs.repository.model.sheets.Spreadsheet} goes through while it is loaded.
+ */
+public enum SheetLoadStage {
+    /**
+     * The upload has been accepted and stored as it was sent, its rows have not been read yet.
+     */
+    Staged,
+    Queued,
+    Loading,
+    Completed,
+    /**
+     * The upload could not be read into rows, nothing has been loaded.
+     */
+    Failed
+}
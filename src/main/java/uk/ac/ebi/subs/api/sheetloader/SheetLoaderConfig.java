@@ -0,0 +1,157 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tuning options for the {@link SheetLoaderService}. They are configurable in the application yml files.
+ */
+@Component
+@ConfigurationProperties("usi.sheet-loader")
+@Data
+public class SheetLoaderConfig {
+
+    /**
+     * Number of rows converted, looked up, persisted and sent for validation in one go.
+     */
+    private int chunkSize = 1000;
+
+    /**
+     * Convert the rows of a chunk on the dedicated conversion pool instead of the loading thread.
+     */
+    private boolean parallelConversion = false;
+
+    /**
+     * Upper bound on the number of threads in the conversion pool.
+     */
+    private int conversionParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum number of aliases in one query when looking up the stored submittables of a chunk.
+     */
+    private int lookupChunkSize = 250;
+
+    /**
+     * Number of threads running the alias lookup queries of a chunk in parallel.
+     */
+    private int lookupParallelism = 4;
+
+    /**
+     * Maximum number of rows mapped by a dry run upload.
+     */
+    private int previewMaxRows = 1000;
+
+    /**
+     * Maximum number of compiled column mapping plans kept by the {@link ColumnMappingPlanCache}.
+     */
+    private int mappingPlanCacheSize = 100;
+
+    /**
+     * Check the document of each row against the validation schema of its checklist before storing it.
+     * Rows that break the schema get the schema errors instead of being stored and sent for validation.
+     */
+    private boolean schemaPreValidation = false;
+
+    /**
+     * Maximum number of compiled checklist validation schemas kept by the {@link ChecklistSchemaCache}.
+     */
+    private int schemaCacheSize = 50;
+
+    /**
+     * Number of consumers taking sheet and shard messages from the queues on this node. They hand the loads to the
+     * {@link SheetLoadScheduler}, which queues them per team and picks the next one fairly across teams.
+     */
+    private int listenerConsumers = 2;
+
+    /**
+     * Number of loads, on top of the ones running, that this node takes from the queues to wait in the
+     * {@link SheetLoadScheduler}, so it can pick between teams. Their messages stay unacknowledged until the load has
+     * finished, and go back to the queue if this node stops.
+     */
+    private int waitingLoads = 2;
+
+    /**
+     * Maximum number of sheet or shard loads running at once on this node.
+     */
+    private int maxConcurrentLoads = 2;
+
+    /**
+     * Maximum number of sheet or shard loads running at once on this node for the same team.
+     */
+    private int maxConcurrentLoadsPerTeam = 1;
+
+    /**
+     * Store submittables and their validation results and processing statuses with unordered Mongo bulk upserts
+     * instead of repository saves. A row whose documents cannot be stored gets an error, the rest of the chunk is kept.
+     * Bulk writes skip the Mongo mapping events, so the loader sets the audit fields itself.
+     */
+    private boolean bulkWrites = false;
+
+    /**
+     * Keep a hash of the row each submittable is loaded from, and skip rows of a re-uploaded sheet whose hash is
+     * unchanged and whose submittable has not been changed since. Skipped rows are neither stored nor validated again.
+     */
+    private boolean skipUnchangedRows = false;
+
+    /**
+     * Check the alias references of each chunk of rows with one query per referenced type before storing the rows.
+     * Rows with references that cannot be found get an error instead of failing validation later.
+     */
+    private boolean resolveReferences = false;
+
+    /**
+     * Split sheets with more than {@link #shardSize} rows into shards that any API node can load.
+     */
+    private boolean shardedLoading = false;
+
+    /**
+     * Number of rows to aim for in each shard of a sharded sheet load.
+     */
+    private int shardSize = 10000;
+
+    /**
+     * How long a node may go without finishing a chunk of a shard before another node may take the shard over,
+     * in milliseconds.
+     */
+    private long shardLeaseMillis = 10 * 60 * 1000;
+
+    /**
+     * Sheets, or shards, with more rows than this have their repeated cell values share one string while they are
+     * loaded. Smaller loads are not worth the extra pass over their cells. A negative value never does this.
+     */
+    private int internCellsThreshold = 10_000;
+
+    /**
+     * Sheets with more rows than this keep their rows in a side collection instead of the sheet document.
+     * Their rows are served by {@code /spreadsheets/{sheetId}/rows}, not with the sheet.
+     * A negative value keeps all rows in the sheet document.
+     */
+    private int externalRowsThreshold = -1;
+
+    /**
+     * Number of rows in each document of the side collection.
+     */
+    private int rowStoreChunkSize = 1000;
+
+    /**
+     * Drop the rows without errors from a sheet once it has been loaded, keeping only the rows the submitter has to
+     * fix. The row counts of the load stay in its {@link SheetLoadProgress}.
+     */
+    private boolean pruneProcessedRows = false;
+
+    /**
+     * Number of days a completed sheet is kept before Mongo expires it.
+     */
+    private int completedSheetRetentionDays = 7;
+
+    /**
+     * How often a progress stream checks for new progress of a sheet load, in milliseconds.
+     */
+    private long progressPollMillis = 1000;
+
+    /**
+     * How long a progress stream stays open before the client has to reconnect, in milliseconds.
+     */
+    private long progressStreamTimeoutMillis = 10 * 60 * 1000;
+}
@@ -0,0 +1,60 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StopWatch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes how the {@link SheetLoaderService} is doing as Micrometer meters, tagged with the data type and
+ * checklist of the sheet.
+ *
+ * Each stage of the {@link StopWatch} of a load is recorded by the {@value #STAGE_TIMER} timer, with the stage name
+ * as the {@code stage} tag. The rows worked through, the rows that failed or were skipped, and the submittables
+ * inserted and updated are counted per chunk.
+ */
+@Component
+@RequiredArgsConstructor
+public class SheetLoaderMetrics {
+
+    static final String STAGE_TIMER = "sheet.loader.stage";
+    static final String ROWS_COUNTER = "sheet.loader.rows";
+    static final String FAILED_ROWS_COUNTER = "sheet.loader.rows.failed";
+    static final String SKIPPED_ROWS_COUNTER = "sheet.loader.rows.skipped";
+    static final String INSERTS_COUNTER = "sheet.loader.inserts";
+    static final String UPDATES_COUNTER = "sheet.loader.updates";
+
+    @NonNull
+    private MeterRegistry meterRegistry;
+
+    public void recordStages(SheetLoadContext context, StopWatch stopWatch) {
+        Tags tags = tags(context);
+
+        for (StopWatch.TaskInfo task : stopWatch.getTaskInfo()) {
+            meterRegistry.timer(STAGE_TIMER, tags.and("stage", task.getTaskName()))
+                    .record(task.getTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void recordChunk(SheetLoadContext context, int rows, int failedRows, int skippedRows,
+                            int inserts, int updates) {
+        Tags tags = tags(context);
+
+        meterRegistry.counter(ROWS_COUNTER, tags).increment(rows);
+        meterRegistry.counter(FAILED_ROWS_COUNTER, tags).increment(failedRows);
+        meterRegistry.counter(SKIPPED_ROWS_COUNTER, tags).increment(skippedRows);
+        meterRegistry.counter(INSERTS_COUNTER, tags).increment(inserts);
+        meterRegistry.counter(UPDATES_COUNTER, tags).increment(updates);
+    }
+
+    private static Tags tags(SheetLoadContext context) {
+        return Tags.of(
+                "dataType", context.getDataType().getId(),
+                "checklist", context.getChecklist().getId()
+        );
+    }
+}
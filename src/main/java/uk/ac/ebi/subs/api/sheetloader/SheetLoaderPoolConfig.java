@@ -0,0 +1,47 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This configuration class provides the thread pools used by the sheet loader service.
+ */
+@Configuration
+public class SheetLoaderPoolConfig {
+
+    /**
+     * Pool for the CPU bound row to submittable conversion. It is kept apart from the common pool,
+     * so a large sheet can not starve other parallel work in the API.
+     */
+    @Bean(destroyMethod = "shutdown")
+    ForkJoinPool sheetConversionPool(SheetLoaderConfig sheetLoaderConfig) {
+        return new ForkJoinPool(Math.max(1, sheetLoaderConfig.getConversionParallelism()));
+    }
+
+    /**
+     * Pool for the alias lookup queries of the {@link SheetBulkOps}. They mostly wait on Mongo,
+     * so they do not share the conversion pool.
+     */
+    @Bean
+    ThreadPoolTaskExecutor sheetLookupExecutor(SheetLoaderConfig sheetLoaderConfig) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, sheetLoaderConfig.getLookupParallelism()));
+        executor.setThreadNamePrefix("sheet-lookup-");
+        return executor;
+    }
+
+    /**
+     * Pool running the sheet and shard loads admitted by the {@link SheetLoadScheduler}. The scheduler never
+     * hands it more than {@link SheetLoaderConfig#getMaxConcurrentLoads()} loads at once.
+     */
+    @Bean
+    ThreadPoolTaskExecutor sheetLoadExecutor(SheetLoaderConfig sheetLoaderConfig) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, sheetLoaderConfig.getMaxConcurrentLoads()));
+        executor.setThreadNamePrefix("sheet-load-");
+        return executor;
+    }
+}
@@ -1,9 +1,13 @@
 package uk.ac.ebi.subs.api.sheetloader;
 
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import uk.ac.ebi.subs.messaging.Queues;
@@ -17,6 +21,34 @@ public class SheetLoaderQueueConfig {
     final static String SHEET_SUBMITTED_QUEUE = "usi-sheetId-submitted-load-contents";
     private final String SHEET_SUBMITTED_ROUTING_KEY = "usi.sheetId.submitted";
 
+    final static String SHEET_SHARD_QUEUE = "usi-sheet-shard-load-rows";
+    final static String SHEET_SHARD_ROUTING_KEY = "usi.sheet.shard.load";
+
+    final static String SHEET_LOAD_CONTAINER_FACTORY = "sheetLoadListenerContainerFactory";
+
+    /**
+     * Listener containers for the sheet queues. The consumers only hand the loads to the {@link SheetLoadScheduler},
+     * so they never wait for a load to run. Messages are acknowledged by hand once their load has finished, and the
+     * prefetch only lets this node hold the loads it can run plus {@link SheetLoaderConfig#getWaitingLoads()}.
+     */
+    @Bean(name = SHEET_LOAD_CONTAINER_FACTORY)
+    SimpleRabbitListenerContainerFactory sheetLoadListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            SheetLoaderConfig sheetLoaderConfig) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+
+        int consumers = Math.max(1, sheetLoaderConfig.getListenerConsumers());
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(consumers);
+
+        int heldLoads = Math.max(1, sheetLoaderConfig.getMaxConcurrentLoads() + sheetLoaderConfig.getWaitingLoads());
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount((heldLoads + consumers - 1) / consumers);
+
+        return factory;
+    }
+
     /**
      * Queue for cleaning up contents of a submission if the user deletes it
      */
@@ -27,4 +59,15 @@ public class SheetLoaderQueueConfig {
     Binding onSubmitLoadSheetBinding(Queue onSubmitLoadSheetQueue, TopicExchange submissionExchange) {
         return BindingBuilder.bind(onSubmitLoadSheetQueue).to(submissionExchange).with(SHEET_SUBMITTED_ROUTING_KEY);
     }
+
+    /**
+     * Queue for loading one range of rows of a large sheet, on whichever node picks it up
+     */
+    @Bean
+    Queue loadSheetShardQueue(){return Queues.buildQueueWithDlx(SHEET_SHARD_QUEUE);}
+
+    @Bean
+    Binding loadSheetShardBinding(Queue loadSheetShardQueue, TopicExchange submissionExchange) {
+        return BindingBuilder.bind(loadSheetShardQueue).to(submissionExchange).with(SHEET_SHARD_ROUTING_KEY);
+    }
 }
@@ -1,17 +1,26 @@
 package uk.ac.ebi.subs.api.sheetloader;
 
+import com.rabbitmq.client.Channel;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.repository.model.sheets.SheetStatusEnum;
 import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
 import uk.ac.ebi.subs.repository.repos.SpreadsheetRepository;
 
+import java.io.IOException;
+
 /**
  * This is a listener class triggered by a {@link Spreadsheet} message is published in the SHEET_SUBMITTED_QUEUE queue.
+ * The loads are handed to the {@link SheetLoadScheduler}, and their messages are only acknowledged once the load has
+ * finished, so the broker redelivers the loads of a node that stops. A load that throws marks the progress of its
+ * sheet as failed, and its message is rejected to the dead letter exchange.
  */
 @Component
 @RequiredArgsConstructor
@@ -25,21 +34,180 @@ public class SheetLoaderRabbitBridge {
     private SpreadsheetRepository spreadsheetRepository;
     @NonNull
     private AdminUserService adminUserService;
+    @NonNull
+    private SheetShardService sheetShardService;
+    @NonNull
+    private SheetLoadScheduler sheetLoadScheduler;
+    @NonNull
+    private SheetLoadProgressService sheetLoadProgressService;
+    @NonNull
+    private SheetUploadStore sheetUploadStore;
+
+
+    @RabbitListener(queues = SheetLoaderQueueConfig.SHEET_SUBMITTED_QUEUE,
+            containerFactory = SheetLoaderQueueConfig.SHEET_LOAD_CONTAINER_FACTORY)
+    public void onSubmissionLoadSheetContents(String sheetId, Channel channel,
+                                              @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        MessageAcknowledgement acknowledgement = new MessageAcknowledgement(channel, deliveryTag);
+
+        try {
+            adminUserService.injectAdminUserIntoSecurityContext();
+
+            // the rows are only read once the load starts, so queued loads do not hold them in memory
+            Spreadsheet sheetWithoutRows = sheetLoadProgressService.findSheetWithoutRows(sheetId);
 
+            if (sheetWithoutRows == null) {
+                logger.warn("sheet {} no longer exists, nothing to load", sheetId);
+                sheetUploadStore.discard(sheetId);
+                acknowledgement.ack();
+                return;
+            }
 
-    @RabbitListener(queues = SheetLoaderQueueConfig.SHEET_SUBMITTED_QUEUE)
-    public void onSubmissionLoadSheetContents(String sheetId) {
+            if (SheetStatusEnum.Completed.equals(sheetWithoutRows.getStatus())) {
+                logger.info("sheet {} has already been loaded, ignoring redelivered message", sheetId);
+                acknowledgement.ack();
+                return;
+            }
 
-        adminUserService.injectAdminUserIntoSecurityContext();
+            sheetLoadScheduler.submit(teamName(sheetWithoutRows), sheetWithoutRows.getCreatedDate(), () -> {
+                adminUserService.injectAdminUserIntoSecurityContext();
 
+                try {
+                    loadSheet(sheetId);
+                } catch (RuntimeException e) {
+                    sheetLoadProgressService.markFailed(sheetId, e.getMessage());
+                    acknowledgement.reject();
+                    throw e;
+                }
+                acknowledgement.ack();
+            });
+        } catch (RuntimeException e) {
+            acknowledgement.reject();
+            throw e;
+        }
+    }
+
+    private void loadSheet(String sheetId) {
         Spreadsheet sheet = spreadsheetRepository.findOne(sheetId);
 
+        if (sheet == null) {
+            logger.warn("sheet {} was deleted before it was loaded", sheetId);
+            sheetUploadStore.discard(sheetId);
+            return;
+        }
+
+        // asynchronous uploads are read into rows here, off the request thread
+        if (sheet.getHeaderRow() == null) {
+            sheet = sheetUploadStore.unstage(sheet);
+
+            if (sheet == null) {
+                return;
+            }
+        }
+
         logger.debug("sheet ready for loading {}", sheet.getId());
 
+        if (sheetShardService.shouldShard(sheet)) {
+            sheetShardService.publishShards(sheet);
+            return;
+        }
+
         sheetLoaderService.loadSheet(sheet);
 
         logger.debug("sheet mapped", sheet.getId());
     }
 
+    @RabbitListener(queues = SheetLoaderQueueConfig.SHEET_SHARD_QUEUE,
+            containerFactory = SheetLoaderQueueConfig.SHEET_LOAD_CONTAINER_FACTORY)
+    public void onLoadSheetShard(SheetLoadShard shard, Channel channel,
+                                 @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        MessageAcknowledgement acknowledgement = new MessageAcknowledgement(channel, deliveryTag);
+
+        try {
+            adminUserService.injectAdminUserIntoSecurityContext();
+
+            Spreadsheet sheetWithoutRows = sheetLoadProgressService.findSheetWithoutRows(shard.getSheetId());
 
+            if (sheetWithoutRows == null) {
+                logger.warn("sheet {} no longer exists, nothing to load", shard.getSheetId());
+                acknowledgement.ack();
+                return;
+            }
+
+            if (SheetStatusEnum.Completed.equals(sheetWithoutRows.getStatus())) {
+                logger.info("sheet {} has already been loaded, ignoring redelivered shard", shard.getSheetId());
+                acknowledgement.ack();
+                return;
+            }
+
+            sheetLoadScheduler.submit(teamName(sheetWithoutRows), sheetWithoutRows.getCreatedDate(), () -> {
+                adminUserService.injectAdminUserIntoSecurityContext();
+
+                try {
+                    loadShard(shard);
+                } catch (RuntimeException e) {
+                    sheetLoadProgressService.markFailed(shard.getSheetId(), e.getMessage());
+                    acknowledgement.reject();
+                    throw e;
+                }
+                acknowledgement.ack();
+            });
+        } catch (RuntimeException e) {
+            acknowledgement.reject();
+            throw e;
+        }
+    }
+
+    private void loadShard(SheetLoadShard shard) {
+        Spreadsheet sheet = sheetShardService.findShardSheet(shard);
+
+        if (sheet == null) {
+            logger.warn("sheet {} was deleted before shard {} was loaded", shard.getSheetId(), shard.getShardIndex());
+            return;
+        }
+
+        // a shard leased by another attempt is left to it
+        if (!sheetLoaderService.loadShard(sheet, shard)) {
+            return;
+        }
+        sheetShardService.completeShard(shard);
+
+        logger.debug("shard {} of {} of sheet {} mapped",
+                shard.getShardIndex() + 1, shard.getShardCount(), sheet.getId());
+    }
+
+    private String teamName(Spreadsheet sheet) {
+        return sheet.getTeam() == null ? null : sheet.getTeam().getName();
+    }
+
+    /**
+     * Acknowledges or rejects one message, from whichever thread its load finishes on.
+     * A message whose channel has closed in the meantime is redelivered by the broker anyway.
+     */
+    private static class MessageAcknowledgement {
+        private final Channel channel;
+        private final long deliveryTag;
+
+        private MessageAcknowledgement(Channel channel, long deliveryTag) {
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+        }
+
+        void ack() {
+            try {
+                channel.basicAck(deliveryTag, false);
+            } catch (IOException e) {
+                logger.warn("could not acknowledge message {}, it will be redelivered: {}", deliveryTag, e.getMessage());
+            }
+        }
+
+        // not requeued, so the message goes to the dead letter exchange of its queue
+        void reject() {
+            try {
+                channel.basicNack(deliveryTag, false, false);
+            } catch (IOException e) {
+                logger.warn("could not reject message {}, it will be redelivered: {}", deliveryTag, e.getMessage());
+            }
+        }
+    }
 }
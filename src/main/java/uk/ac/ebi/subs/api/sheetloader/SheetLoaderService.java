@@ -1,8 +1,14 @@
 package uk.ac.ebi.subs.api.sheetloader;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.everit.json.schema.ValidationException;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +16,7 @@ import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.util.StopWatch;
+import uk.ac.ebi.subs.api.services.SheetCellInterner;
 import uk.ac.ebi.subs.api.services.SubmittableValidationDispatcher;
 import uk.ac.ebi.subs.repository.model.Checklist;
 import uk.ac.ebi.subs.repository.model.DataType;
@@ -28,15 +35,24 @@ import uk.ac.ebi.subs.repository.repos.submittables.SubmittableRepository;
 import uk.ac.ebi.subs.repository.services.SubmittableHelperService;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 /**
@@ -66,6 +82,26 @@ public class SheetLoaderService {
     private ChecklistRepository checklistRepository;
     @NonNull
     private SubmissionRepository submissionRepository;
+    @NonNull
+    private SheetLoaderConfig sheetLoaderConfig;
+    @NonNull
+    private ForkJoinPool sheetConversionPool;
+    @NonNull
+    private ColumnMappingPlanCache columnMappingPlanCache;
+    @NonNull
+    private SheetLoadProgressService sheetLoadProgressService;
+    @NonNull
+    private SheetRowStore sheetRowStore;
+    @NonNull
+    private SheetRowHashService sheetRowHashService;
+    @NonNull
+    private SheetReferenceResolver sheetReferenceResolver;
+    @NonNull
+    private ChecklistSchemaCache checklistSchemaCache;
+    @NonNull
+    private SheetLoaderMetrics sheetLoaderMetrics;
+
+    private final Map<Class<?>, ObjectReader> objectReaders = new ConcurrentHashMap<>();
 
     public void loadSheet(Spreadsheet sheet) {
         logger.info("processing sheet {}", sheet.getId());
@@ -78,11 +114,132 @@ public class SheetLoaderService {
         Assert.notNull(sheet.getDataTypeId());
         Assert.notNull(sheet.getChecklistId());
 
+        SheetLoadContext context = loadContext(sheet);
+
+        logger.debug("mapping {} for submission {} from sheet {}",
+                context.getTargetTypeClass().getName(), context.getSubmission().getId(), sheet.getId());
+
+        List<Row> rows = sheet.getRows();
+        int rowCount = context.isExternalRows() ? sheetRowStore.rowCount(sheet) : rows.size();
+
+        // external rows are read a chunk at a time, so only rows held for the whole load are interned
+        if (!context.isExternalRows()) {
+            internCells(rows);
+        }
+        int chunkSize = Math.max(1, sheetLoaderConfig.getChunkSize());
+
+        SheetLoadProgress progress = sheetLoadProgressService.startAttempt(sheet, rowCount);
+        int resumeFrom = Math.min(progress.getCompletedRows(), rowCount);
+
+        // an earlier attempt may have stopped part way through inserting the first chunk we are about to load
+        boolean mayHavePartialInserts = progress.getAttempts() > 1;
+
+        if (resumeFrom > 0) {
+            logger.info("resuming sheet {} from row {}, attempt {}", sheet.getId(), resumeFrom, progress.getAttempts());
+        }
+
+        stopWatch.stop();
+
+        for (int chunkStart = resumeFrom; chunkStart < rowCount; chunkStart += chunkSize) {
+            int chunkEnd = Math.min(chunkStart + chunkSize, rowCount);
+
+            logger.debug("loading rows {} to {} of sheet {}", chunkStart, chunkEnd, sheet.getId());
+
+            List<Row> chunk = context.isExternalRows()
+                    ? sheetRowStore.readRows(sheet.getId(), chunkStart, chunkEnd)
+                    : rows.subList(chunkStart, chunkEnd);
+
+            loadChunk(context, chunkStart, chunk, mayHavePartialInserts, stopWatch);
+            mayHavePartialInserts = false;
+        }
+
+        stopWatch.start("save progress");
+
+        boolean pruneProcessedRows = sheetLoaderConfig.isPruneProcessedRows();
+        if (pruneProcessedRows && !context.isExternalRows()) {
+            sheet.setRows(rows.stream().filter(Row::hasErrors).collect(Collectors.toList()));
+        }
+
+        sheet.setStatus(SheetStatusEnum.Completed);
+        sheet.setLastModifiedDate(new Date());
+        sheetRepository.save(sheet);
+        sheetLoadProgressService.markCompleted(sheet.getId());
+
+        if (pruneProcessedRows && context.isExternalRows()) {
+            sheetRowStore.pruneProcessedRows(sheet.getId());
+        }
+
+        stopWatch.stop();
+        sheetLoaderMetrics.recordStages(context, stopWatch);
+        logger.info(stopWatch.prettyPrint());
+
+    }
+
+    /**
+     * Loads one shard of a sheet. The sheet must hold just the rows of the shard.
+     * Rows and progress are written with targeted updates, so other nodes can load other shards of the same sheet.
+     * The shard is only loaded while this attempt holds its lease, so no two nodes load the same shard at once.
+     *
+     * @return false if the shard was not loaded, because another attempt holds its lease or it was already loaded
+     */
+    public boolean loadShard(Spreadsheet sheet, SheetLoadShard shard) {
+        logger.info("processing rows {} to {} of sheet {}", shard.getFromRow(), shard.getToRow(), sheet.getId());
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start("init");
+
+        Assert.notNull(sheet.getRows());
+        Assert.isTrue(sheet.getRows().size() == shard.size());
+
+        String leaseOwner = UUID.randomUUID().toString();
+        SheetLoadProgress progress = sheetLoadProgressService.startShardAttempt(shard, leaseOwner);
+
+        if (progress == null) {
+            logger.info("shard {} of sheet {} is loaded by another attempt, or has already been loaded",
+                    shard.getShardIndex(), sheet.getId());
+            return false;
+        }
+
+        SheetLoadContext context = loadContext(sheet, shard, leaseOwner);
+
+        List<Row> rows = sheet.getRows();
+        internCells(rows);
+
+        int chunkSize = Math.max(1, sheetLoaderConfig.getChunkSize());
+        String shardKey = Integer.toString(shard.getShardIndex());
+
+        int resumeFrom = Math.min(progress.getShardCompletedRows().getOrDefault(shardKey, 0), rows.size());
+        // this attempt holds the lease, so any earlier attempt has stopped, maybe part way through inserting a chunk
+        boolean mayHavePartialInserts = progress.getShardAttempts().getOrDefault(shardKey, 0) > 1;
+
+        stopWatch.stop();
+
+        for (int chunkStart = resumeFrom; chunkStart < rows.size(); chunkStart += chunkSize) {
+            int chunkEnd = Math.min(chunkStart + chunkSize, rows.size());
+
+            loadChunk(context, shard.getFromRow() + chunkStart, rows.subList(chunkStart, chunkEnd),
+                    mayHavePartialInserts, stopWatch);
+            mayHavePartialInserts = false;
+        }
+
+        sheetLoaderMetrics.recordStages(context, stopWatch);
+        logger.info(stopWatch.prettyPrint());
+
+        return true;
+    }
+
+    private SheetLoadContext loadContext(Spreadsheet sheet) {
+        return loadContext(sheet, null, null);
+    }
+
+    private SheetLoadContext loadContext(Spreadsheet sheet, SheetLoadShard shard, String shardLeaseOwner) {
+        return loadContext(sheet, shard, shardLeaseOwner, sheetRowStore.externalRows(sheet.getId()).isPresent());
+    }
+
+    private SheetLoadContext loadContext(Spreadsheet sheet, SheetLoadShard shard, String shardLeaseOwner,
+                                         boolean externalRows) {
         Checklist checklist = checklistRepository.findOne(sheet.getChecklistId());
         DataType dataType = dataTypeRepository.findOne(checklist.getDataTypeId());
 
-        Template template = checklist.getSpreadsheetTemplate();
-
         String targetType = dataType.getSubmittableClassName();
         Class<? extends StoredSubmittable> targetTypeClass = this.submittableRepositoryMap.keySet()
                 .stream()
@@ -91,27 +248,138 @@ public class SheetLoaderService {
                 .get();
 
         SubmittableRepository repository = this.submittableRepositoryMap.get(targetTypeClass);
-        String submissionId = sheet.getSubmissionId();
-        Submission submission = submissionRepository.findOne(submissionId);
+        Submission submission = submissionRepository.findOne(sheet.getSubmissionId());
 
-        logger.debug("mapping {} for submission {} from sheet {}", targetType, submissionId, sheet.getId());
+        ColumnMappingPlan columnMappingPlan = columnMappingPlanCache.planFor(checklist, sheet.getHeaderRow());
+
+        // only a sheet holding all of its rows knows every alias it is about to load
+        Set<String> sheetAliases = null;
+        if (sheetLoaderConfig.isResolveReferences() && shard == null && !externalRows) {
+            sheetAliases = sheetAliases(sheet.getRows(), columnMappingPlan.getAliasPosition());
+        }
+
+        return SheetLoadContext.builder()
+                .sheet(sheet)
+                .checklist(checklist)
+                .dataType(dataType)
+                .submission(submission)
+                .targetTypeClass(targetTypeClass)
+                .repository(repository)
+                .columnMappingPlan(columnMappingPlan)
+                .shard(shard)
+                .shardLeaseOwner(shardLeaseOwner)
+                .externalRows(externalRows)
+                .sheetAliases(sheetAliases)
+                .build();
+    }
+
+    private static Set<String> sheetAliases(List<Row> rows, int aliasPosition) {
+        Set<String> aliases = new HashSet<>();
+
+        if (aliasPosition >= 0) {
+            for (Row row : rows) {
+                String alias = SheetShardPlanner.sheetAlias(row, aliasPosition);
+                if (alias != null) {
+                    aliases.add(alias);
+                }
+            }
+        }
+
+        return aliases;
+    }
+
+    private void resolveReferences(SheetLoadContext context, Collection<Pair<Row, ? extends StoredSubmittable>> submittables) {
+        sheetReferenceResolver.resolveReferences(
+                submittables,
+                context.getTargetTypeClass(),
+                context.getSubmission().getTeam().getName(),
+                context.getSheetAliases()
+        );
+    }
+
+    /**
+     * Maps the first rows of a sheet the way a load would, without storing or sending anything.
+     * The previewed rows get the same errors a load would give them.
+     *
+     * @param sheet    a sheet that has been pre-processed, but not stored
+     * @param rowLimit the number of rows to preview, capped by {@link SheetLoaderConfig#getPreviewMaxRows()}
+     * @return the errors of the previewed rows
+     */
+    public SheetPreview previewSheet(Spreadsheet sheet, int rowLimit) {
+        Assert.notNull(sheet.getRows());
+
+        SheetLoadContext context = loadContext(sheet, null, null, false);
+
+        int previewRowCount = Math.max(0, Math.min(
+                Math.min(rowLimit, sheetLoaderConfig.getPreviewMaxRows()),
+                sheet.getRows().size()
+        ));
+        List<Row> previewRows = sheet.getRows().subList(0, previewRowCount);
+
+        List<Pair<Row, ? extends StoredSubmittable>> previewSubmittables = convertToSubmittables(
+                previewRows,
+                context.getColumnMappingPlan(),
+                context.getTargetTypeClass(),
+                context.getSubmission(),
+                context.getDataType(),
+                context.getChecklist()
+        );
+
+        if (sheetLoaderConfig.isResolveReferences()) {
+            resolveReferences(context, previewSubmittables);
+        }
+
+        SheetPreview preview = new SheetPreview();
+        preview.setTotalRows(sheet.getRows().size());
+        preview.setPreviewedRows(previewRowCount);
+
+        for (int rowIndex = 0; rowIndex < previewRowCount; rowIndex++) {
+            Row row = previewRows.get(rowIndex);
+            if (row.hasErrors()) {
+                preview.getRowErrors().add(new SheetPreview.RowErrors(rowIndex, new ArrayList<>(row.getErrors())));
+            }
+        }
+        preview.setFailedRows(preview.getRowErrors().size());
+
+        return preview;
+    }
+
+    /**
+     * Runs every stage of the load (convert, lookup, update, insert, validation) over one window of rows,
+     * then records the progress on the sheet. Memory use is bounded by the chunk size, not the sheet size.
+     *
+     * New submittables get IDs derived from the sheet ID and their row index, so loading the same chunk again
+     * after a crash reuses the IDs of anything the crashed attempt managed to insert.
+     */
+    private void loadChunk(SheetLoadContext context, int chunkStart, List<Row> chunk,
+                           boolean mayHavePartialInserts, StopWatch stopWatch) {
+        Spreadsheet sheet = context.getSheet();
+        SubmittableRepository repository = context.getRepository();
 
-        stopWatch.stop();
         stopWatch.start("convert");
 
         Collection<Pair<Row, ? extends StoredSubmittable>> submittablesWithRows = convertToSubmittables(
-                sheet,
-                targetTypeClass,
-                template,
-                submission,
-                dataType,
-                checklist
+                chunk,
+                context.getColumnMappingPlan(),
+                context.getTargetTypeClass(),
+                context.getSubmission(),
+                context.getDataType(),
+                context.getChecklist()
         );
 
         stopWatch.stop();
+
+        if (sheetLoaderConfig.isResolveReferences()) {
+            stopWatch.start("resolve references");
+
+            resolveReferences(context, submittablesWithRows);
+
+            stopWatch.stop();
+        }
+
         stopWatch.start("lookup");
 
-        submittablesWithRows = sheetBulkOps.lookupExistingEntries(submission, submittablesWithRows, repository);
+        submittablesWithRows = sheetBulkOps.lookupExistingEntries(context.getSubmission(), submittablesWithRows, repository);
 
         stopWatch.stop();
         stopWatch.start("organise");
@@ -126,65 +394,166 @@ public class SheetLoaderService {
                 .filter(p -> p.getSecond().getId() != null)
                 .collect(Collectors.toList());
 
-        stopWatch.stop();
-        stopWatch.start("update existing");
+        Map<Row, Integer> rowIndexes = new IdentityHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            rowIndexes.put(chunk.get(i), chunkStart + i);
+        }
 
-        sheetBulkOps.updateExistingSubmittables(existingSubmittables, repository);
+        for (Pair<Row, ? extends StoredSubmittable> pair : freshSubmittables) {
+            pair.getSecond().setId(SheetBulkOps.rowSubmittableId(sheet.getId(), rowIndexes.get(pair.getFirst())));
+        }
 
         stopWatch.stop();
-        stopWatch.start("progress update");
 
-        sheet.setLastModifiedDate(new Date());
-        sheetRepository.save(sheet);
+        Map<Row, String> rowHashes = new IdentityHashMap<>();
+        Set<StoredSubmittable> unchangedSubmittables = Collections.emptySet();
+
+        if (sheetLoaderConfig.isSkipUnchangedRows()) {
+            stopWatch.start("row hashes");
+
+            List<String> headers = sheet.getHeaderRow().getCells();
+            for (Pair<Row, ? extends StoredSubmittable> pair : submittablesWithRows) {
+                if (!pair.getFirst().hasErrors()) {
+                    rowHashes.put(pair.getFirst(), SheetRowHashService.rowHash(sheet.getChecklistId(), headers, pair.getFirst()));
+                }
+            }
+
+            unchangedSubmittables = sheetRowHashService.findUnchanged(existingSubmittables, rowHashes);
+            if (!unchangedSubmittables.isEmpty()) {
+                Set<StoredSubmittable> unchanged = unchangedSubmittables;
+                existingSubmittables.stream()
+                        .filter(p -> unchanged.contains(p.getSecond()))
+                        .forEach(p -> p.getFirst().setProcessed(true));
+                existingSubmittables = existingSubmittables.stream()
+                        .filter(p -> !unchanged.contains(p.getSecond()))
+                        .collect(Collectors.toList());
+            }
+
+            stopWatch.stop();
+        }
+
+        stopWatch.start("update existing");
+
+        sheetBulkOps.updateExistingSubmittables(existingSubmittables, repository);
 
         stopWatch.stop();
         stopWatch.start("insert new");
 
+        if (mayHavePartialInserts) {
+            sheetBulkOps.removePartialInserts(freshSubmittables, repository);
+        }
         sheetBulkOps.insertNewSubmittables(freshSubmittables, repository);
 
         stopWatch.stop();
+
+        if (sheetLoaderConfig.isSkipUnchangedRows()) {
+            stopWatch.start("save row hashes");
+
+            List<Pair<Row, ? extends StoredSubmittable>> storedSubmittables = new ArrayList<>(existingSubmittables);
+            storedSubmittables.addAll(freshSubmittables);
+            storedSubmittables.removeIf(p -> p.getFirst().hasErrors());
+            sheetRowHashService.saveHashes(storedSubmittables, rowHashes);
+
+            stopWatch.stop();
+        }
+
         stopWatch.start("validation trigger");
-        submittablesWithRows.stream()
+        Set<StoredSubmittable> skippedSubmittables = unchangedSubmittables;
+        List<StoredSubmittable> submittablesToValidate = submittablesWithRows.stream()
                 .filter(p -> p.getFirst().hasErrors() == false)
+                .filter(p -> !skippedSubmittables.contains(p.getSecond()))
                 .map(p -> p.getSecond())
-                .forEach(submittable -> submittableValidationDispatcher.validateUpdate(submittable));
+                .collect(Collectors.toList());
+        submittableValidationDispatcher.validateBatch(submittablesToValidate);
 
         stopWatch.stop();
-        stopWatch.start("save progress");
+        stopWatch.start("progress update");
 
-        sheet.setStatus(SheetStatusEnum.Completed);
-        sheet.setLastModifiedDate(new Date());
-        sheetRepository.save(sheet);
+        int failedRows = (int) chunk.stream().filter(Row::hasErrors).count();
+        int skippedRows = unchangedSubmittables.size();
+        int processedRows = chunk.size() - failedRows - skippedRows;
+        SheetLoadShard shard = context.getShard();
+
+        sheetLoaderMetrics.recordChunk(
+                context,
+                chunk.size(),
+                failedRows,
+                skippedRows,
+                (int) freshSubmittables.stream().filter(p -> !p.getFirst().hasErrors()).count(),
+                (int) existingSubmittables.stream().filter(p -> !p.getFirst().hasErrors()).count()
+        );
 
-        stopWatch.stop();
-        logger.info(stopWatch.prettyPrint());
+        // only the rows of the chunk are written, the sheet document is saved as a whole once the load has finished
+        sheetRowStore.writeRows(sheet.getId(), chunkStart, chunk);
 
+        if (shard == null) {
+            sheetLoadProgressService.recordChunk(
+                    sheet.getId(),
+                    chunkStart + chunk.size(),
+                    processedRows,
+                    failedRows,
+                    skippedRows
+            );
+        } else {
+            boolean leaseHeld = sheetLoadProgressService.recordShardChunk(
+                    shard,
+                    context.getShardLeaseOwner(),
+                    chunkStart + chunk.size() - shard.getFromRow(),
+                    chunk.size(),
+                    processedRows,
+                    failedRows,
+                    skippedRows
+            );
+
+            if (!leaseHeld) {
+                throw new IllegalStateException("lost the lease of shard " + shard.getShardIndex()
+                        + " of sheet " + sheet.getId() + ", another attempt has taken it over");
+            }
+        }
+
+        stopWatch.stop();
     }
 
     protected List<Pair<Row, ? extends StoredSubmittable>> convertToSubmittables(
             Spreadsheet sheet, Class<? extends StoredSubmittable> targetTypeClass, Template template,
             Submission submission, DataType dataType, Checklist checklist) {
-        List<Capture> columnMappings = mapColumns(
-                sheet.getHeaderRow(),
+        ColumnMappingPlan columnMappingPlan = ColumnMappingPlan.compile(
+                sheet.getHeaderRow().getCells(),
                 template.getColumnCaptures(),
                 Optional.of(template.getDefaultCapture())
         );
 
-        List<Pair<Row, ? extends StoredSubmittable>> submittables = new LinkedList<>();
+        return convertToSubmittables(
+                sheet.getRows(),
+                columnMappingPlan,
+                targetTypeClass,
+                submission,
+                dataType,
+                checklist
+        );
+    }
+
+    protected List<Pair<Row, ? extends StoredSubmittable>> convertToSubmittables(
+            List<Row> rows, ColumnMappingPlan columnMappingPlan,
+            Class<? extends StoredSubmittable> targetTypeClass, Submission submission, DataType dataType,
+            Checklist checklist) {
+        if (sheetLoaderConfig.isParallelConversion()) {
+            return convertInParallel(rows, columnMappingPlan, targetTypeClass, submission, dataType, checklist);
+        }
 
-        for (Row row : sheet.getRows()) {
-            StoredSubmittable storedSubmittable = rowToSubmittable(
-                    columnMappings,
+        List<Pair<Row, ? extends StoredSubmittable>> submittables = new ArrayList<>(rows.size());
+
+        for (Row row : rows) {
+            Pair<Row, ? extends StoredSubmittable> pair = rowToPair(
+                    columnMappingPlan,
                     targetTypeClass,
                     submission,
                     row,
-                    sheet.getHeaderRow().getCells(),
                     dataType,
                     checklist
             );
 
-            if (storedSubmittable != null) {
-                Pair<Row, ? extends StoredSubmittable> pair = Pair.of(row, storedSubmittable);
+            if (pair != null) {
                 submittables.add(pair);
             }
         }
@@ -192,50 +561,78 @@ public class SheetLoaderService {
         return submittables;
     }
 
-    protected List<Capture> mapColumns(Row headerRow, Map<String, Capture> columnCaptures, Optional<Capture> optionalDefaultCapture) {
-        logger.debug("Mapping by headers {} to captures {}, with default {}", headerRow, columnCaptures, optionalDefaultCapture);
-        Map<String, Capture> columnCapturesWithLowerCaseKeys = lowerCasedColumnCaptures(columnCaptures);
-
-        columnCapturesWithLowerCaseKeys.entrySet().stream().forEach(entry ->
-                entry.getValue().setDisplayName(entry.getKey())
-        );
-
-        List<Capture> capturePositions = new ArrayList<>(Collections.nCopies(headerRow.getCells().size(), null));
+    /**
+     * Converts the rows on the sheet conversion pool. The ordered stream keeps the submittables in row order,
+     * and each row only ever records errors against itself, so the outcome matches the sequential conversion.
+     */
+    private List<Pair<Row, ? extends StoredSubmittable>> convertInParallel(
+            List<Row> rows, ColumnMappingPlan columnMappingPlan,
+            Class<? extends StoredSubmittable> targetTypeClass, Submission submission, DataType dataType,
+            Checklist checklist) {
+        try {
+            return sheetConversionPool.submit(() -> rows.parallelStream()
+                    .<Pair<Row, ? extends StoredSubmittable>>map(row -> rowToPair(columnMappingPlan, targetTypeClass, submission, row, dataType, checklist))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList())
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while converting sheet rows", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not convert sheet rows", e.getCause());
+        }
+    }
 
-        List<String> headerRowCells = headerRow.getCells();
-        int position = 0;
+    private Pair<Row, ? extends StoredSubmittable> rowToPair(ColumnMappingPlan columnMappingPlan,
+                                                           Class<? extends StoredSubmittable> targetTypeClass,
+                                                           Submission submission, Row row,
+                                                           DataType dataType, Checklist checklist) {
+        StoredSubmittable storedSubmittable;
+
+        try {
+            storedSubmittable = rowToSubmittable(
+                    columnMappingPlan, targetTypeClass, submission, row, dataType, checklist);
+        } catch (RuntimeException e) {
+            logger.error("Unexpected error while converting row {} to {}", row, targetTypeClass.getName(), e);
+            row.getErrors().add("Unrecoverable error while converting row");
+            row.setProcessed(false);
+            return null;
+        }
 
-        while (position < headerRowCells.size()) {
+        if (storedSubmittable == null) {
+            return null;
+        }
 
-            String currentHeader = headerRowCells.get(position);
-            currentHeader = currentHeader.trim().toLowerCase();
+        return Pair.of(row, storedSubmittable);
+    }
 
-            if (columnCapturesWithLowerCaseKeys.containsKey(currentHeader)) {
-                Capture capture = columnCapturesWithLowerCaseKeys.get(currentHeader);
+    protected List<Capture> mapColumns(Row headerRow, Map<String, Capture> columnCaptures, Optional<Capture> optionalDefaultCapture) {
+        logger.debug("Mapping by headers {} to captures {}, with default {}", headerRow, columnCaptures, optionalDefaultCapture);
 
-                position = capture.map(position, capturePositions, headerRowCells);
-            } else if (optionalDefaultCapture.isPresent()) {
-                Capture clonedCapture = optionalDefaultCapture.get().copy();
-                clonedCapture.setDisplayName(currentHeader);
-                position = clonedCapture.map(position, capturePositions, headerRowCells);
-            } else {
-                position++;
-            }
-        }
+        return ColumnMappingPlan.compile(headerRow.getCells(), columnCaptures, optionalDefaultCapture).getCaptures();
+    }
 
-        capturePositions.forEach(capture ->
-                capture.setDisplayName(null)
-        );
+    protected JSONObject rowToDocument(Row row, List<Capture> mappings, List<String> headers) {
+        List<String> displayNames = mappings.stream()
+                .map(capture -> capture == null ? null : capture.getDisplayName())
+                .collect(Collectors.toList());
 
-        return capturePositions;
+        return rowToDocument(row, mappings, displayNames, headers);
     }
 
-    private Map<String, Capture> lowerCasedColumnCaptures(Map<String, Capture> columnCaptures) {
-        return columnCaptures.entrySet().stream()
-                .collect(Collectors.toMap(entry -> entry.getKey().toLowerCase(), Map.Entry::getValue));
+    protected JSONObject rowToDocument(Row row, ColumnMappingPlan columnMappingPlan) {
+        return rowToDocument(
+                row,
+                columnMappingPlan.getCaptures(),
+                columnMappingPlan.getDisplayNames(),
+                columnMappingPlan.getHeaders()
+        );
     }
 
-    protected JSONObject rowToDocument(Row row, List<Capture> mappings, List<String> headers) {
+    private JSONObject rowToDocument(Row row, List<Capture> mappings, List<String> displayNames, List<String> headers) {
         JSONObject jsonObject = new JSONObject();
         row.getErrors().clear();
 
@@ -250,7 +647,7 @@ public class SheetLoaderService {
                 try {
                     capture.capture(position, headers, cells, jsonObject);
                 } catch (NumberFormatException e) {
-                    String errorMessage = capture.getDisplayName() + " must be a number";
+                    String errorMessage = displayNames.get(position) + " must be a number";
                     row.getErrors().add(errorMessage);
                 }
             }
@@ -304,11 +701,11 @@ public class SheetLoaderService {
     }
 
 
-    private StoredSubmittable rowToSubmittable(List<Capture> columnMappings,
+    private StoredSubmittable rowToSubmittable(ColumnMappingPlan columnMappingPlan,
                                                Class<? extends StoredSubmittable> targetTypeClass,
-                                               Submission submission, Row row, List<String> headerRow,
+                                               Submission submission, Row row,
                                                DataType dataType, Checklist checklist) {
-        JSONObject json = rowToDocument(row, columnMappings, headerRow);
+        JSONObject json = rowToDocument(row, columnMappingPlan);
 
         logger.debug("mapping row to doc {} {}", row, json);
 
@@ -320,9 +717,13 @@ public class SheetLoaderService {
                                                       Checklist checklist) {
         StoredSubmittable submittable = null;
 
+        if (row.getErrors().isEmpty() && sheetLoaderConfig.isSchemaPreValidation()) {
+            preValidateDocument(row, json, checklist);
+        }
+
         if (row.getErrors().isEmpty()) {
             try {
-                submittable = objectMapper.readValue(json.toString(), targetTypeClass);
+                submittable = bindDocument(json, targetTypeClass);
 
                 submittable.setSubmission(submission);
                 submittable.setDataType(dataType);
@@ -345,10 +746,97 @@ public class SheetLoaderService {
             } catch (IOException e) {
                 logger.error("IO exception while converting json to submittable class {}. JSON: {} ", targetTypeClass.getName(), json);
                 row.getErrors().add("Unrecoverable error while converting row");
+                row.setProcessed(false);
             }
 
             logger.debug("mapped doc to submittable {} {}", json, submittable);
         }
         return submittable;
     }
+
+    /**
+     * Checks the document against the validation schema of the checklist, adding the schema errors to the row,
+     * which is then no longer processed. The schema is only a first check, the validators still run for rows that
+     * pass it.
+     */
+    private void preValidateDocument(Row row, JSONObject json, Checklist checklist) {
+        if (checklist == null) {
+            return;
+        }
+
+        checklistSchemaCache.schemaFor(checklist).ifPresent(schema -> {
+            try {
+                schema.validate(json);
+            } catch (ValidationException e) {
+                row.getErrors().addAll(e.getAllMessages());
+                row.setProcessed(false);
+            }
+        });
+    }
+
+    /**
+     * Lets the repeated values of rows held for a whole load share one string, when there are enough rows for
+     * that to pay off. The interner is dropped once the rows are interned.
+     */
+    private void internCells(List<Row> rows) {
+        int threshold = sheetLoaderConfig.getInternCellsThreshold();
+        if (threshold >= 0 && rows.size() > threshold) {
+            SheetCellInterner.internRows(rows);
+        }
+    }
+
+    /**
+     * Binds the captured document to the target class. The document is replayed into a {@link TokenBuffer} rather
+     * than printed and parsed again, and the {@link ObjectReader} is reused for every row.
+     *
+     * Each row still builds its {@link JSONObject} first: the template captures can only write into one, and the
+     * schema pre-validation checks it. Only the text round trip is saved here, not the document itself.
+     */
+    private StoredSubmittable bindDocument(JSONObject json, Class<? extends StoredSubmittable> targetTypeClass) throws IOException {
+        ObjectReader objectReader = objectReaders.computeIfAbsent(targetTypeClass, objectMapper::readerFor);
+
+        TokenBuffer tokenBuffer = new TokenBuffer(objectMapper, false);
+        writeJsonValue(json, tokenBuffer);
+
+        try (JsonParser parser = tokenBuffer.asParser()) {
+            return objectReader.readValue(parser);
+        }
+    }
+
+    private static void writeJsonValue(Object value, JsonGenerator generator) throws IOException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            generator.writeNull();
+        } else if (value instanceof JSONObject) {
+            JSONObject jsonObject = (JSONObject) value;
+            generator.writeStartObject();
+            for (String key : jsonObject.keySet()) {
+                generator.writeFieldName(key);
+                writeJsonValue(jsonObject.get(key), generator);
+            }
+            generator.writeEndObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray jsonArray = (JSONArray) value;
+            generator.writeStartArray();
+            for (int i = 0; i < jsonArray.length(); i++) {
+                writeJsonValue(jsonArray.get(i), generator);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof Number) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of a dry run upload: the errors that loading the first rows of a sheet would give,
+ * worked out by {@link SheetLoaderService#previewSheet} without storing anything.
+ */
+@Data
+public class SheetPreview {
+
+    /**
+     * Number of rows in the sheet.
+     */
+    private int totalRows;
+
+    /**
+     * Number of rows, from the start of the sheet, that were mapped.
+     */
+    private int previewedRows;
+
+    /**
+     * Number of previewed rows with errors.
+     */
+    private int failedRows;
+
+    /**
+     * The errors of each previewed row that has any.
+     */
+    private List<RowErrors> rowErrors = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowErrors {
+
+        /**
+         * Index of the row in the rows of the sheet.
+         */
+        private int rowIndex;
+
+        private List<String> errors = new ArrayList<>();
+    }
+}
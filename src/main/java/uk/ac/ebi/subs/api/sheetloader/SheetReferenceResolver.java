@@ -0,0 +1,164 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.subs.data.component.AbstractSubsRef;
+import uk.ac.ebi.subs.repository.model.StoredSubmittable;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.repos.submittables.SubmittableRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks the alias references of a chunk of sheet rows before anything is stored, with one query per referenced
+ * type instead of one lookup per reference during validation. Rows with a reference that cannot be resolved get an
+ * error, so they are not stored.
+ *
+ * A reference resolves to a stored submittable of the referenced type with the same team and alias, or to a row
+ * of the same sheet when it references the type and team the sheet is loaded into. References by accession are
+ * left to the validators.
+ */
+@Service
+@RequiredArgsConstructor
+public class SheetReferenceResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(SheetReferenceResolver.class);
+
+    @NonNull
+    private Map<Class<? extends StoredSubmittable>, SubmittableRepository<? extends StoredSubmittable>> submittableRepositoryMap;
+    @NonNull
+    private MongoTemplate mongoTemplate;
+
+    private final Map<Class<?>, Optional<Class<? extends StoredSubmittable>>> referencedTypes = new ConcurrentHashMap<>();
+
+    /**
+     * @param submittables    the rows of the chunk and the submittables converted from them
+     * @param targetTypeClass the type the sheet is loaded into
+     * @param teamName        the team the sheet is loaded into
+     * @param sheetAliases    the trimmed aliases of all rows of the sheet, or null if they are not known, in which case
+     *                        references to the type and team of the sheet are left to the validators
+     */
+    public void resolveReferences(Collection<Pair<Row, ? extends StoredSubmittable>> submittables,
+                                  Class<? extends StoredSubmittable> targetTypeClass, String teamName,
+                                  Set<String> sheetAliases) {
+        Map<Class<? extends StoredSubmittable>, Map<String, Set<String>>> aliasesToFind = new LinkedHashMap<>();
+        List<Pair<Row, ReferenceKey>> rowReferences = new ArrayList<>();
+
+        for (Pair<Row, ? extends StoredSubmittable> pair : submittables) {
+            if (pair.getFirst().hasErrors()) {
+                continue;
+            }
+
+            pair.getSecond().refs()
+                    .filter(ref -> ref.getAccession() == null)
+                    .filter(ref -> ref.getAlias() != null && ref.getTeam() != null)
+                    .forEach(ref -> referencedType(ref).ifPresent(type -> {
+                        boolean sheetReference = type.equals(targetTypeClass) && ref.getTeam().equals(teamName);
+
+                        if (sheetReference && (sheetAliases == null || sheetAliases.contains(ref.getAlias().trim()))) {
+                            return;
+                        }
+
+                        ReferenceKey key = new ReferenceKey(type, ref.getTeam(), ref.getAlias());
+                        rowReferences.add(Pair.of(pair.getFirst(), key));
+                        aliasesToFind
+                                .computeIfAbsent(type, t -> new LinkedHashMap<>())
+                                .computeIfAbsent(ref.getTeam(), t -> new HashSet<>())
+                                .add(ref.getAlias());
+                    }));
+        }
+
+        if (rowReferences.isEmpty()) {
+            return;
+        }
+
+        Set<ReferenceKey> storedReferences = new HashSet<>();
+        aliasesToFind.forEach((type, aliasesByTeam) -> storedReferences.addAll(findStored(type, aliasesByTeam)));
+
+        for (Pair<Row, ReferenceKey> rowReference : rowReferences) {
+            ReferenceKey key = rowReference.getSecond();
+
+            if (!storedReferences.contains(key)) {
+                String error = "Could not find the referenced " + key.getType().getSimpleName().toLowerCase()
+                        + " with alias " + key.getAlias() + " in team " + key.getTeam();
+
+                Row row = rowReference.getFirst();
+                if (!row.getErrors().contains(error)) {
+                    row.getErrors().add(error);
+                }
+                row.setProcessed(false);
+            }
+        }
+    }
+
+    /**
+     * Finds which of the aliases are stored, with one query covering every team.
+     */
+    private Set<ReferenceKey> findStored(Class<? extends StoredSubmittable> type, Map<String, Set<String>> aliasesByTeam) {
+        List<Criteria> teamCriteria = new ArrayList<>();
+        aliasesByTeam.forEach((team, aliases) -> teamCriteria.add(
+                Criteria.where("team.name").is(team).and("alias").in(aliases)
+        ));
+
+        Query query = new Query(new Criteria().orOperator(teamCriteria.toArray(new Criteria[teamCriteria.size()])));
+        query.fields().include("alias").include("team");
+
+        Set<ReferenceKey> stored = new HashSet<>();
+        for (StoredSubmittable submittable : mongoTemplate.find(query, type)) {
+            if (submittable.getTeam() != null) {
+                stored.add(new ReferenceKey(type, submittable.getTeam().getName(), submittable.getAlias()));
+            }
+        }
+
+        logger.debug("found {} of the referenced {} aliases", stored.size(), type.getSimpleName());
+
+        return stored;
+    }
+
+    /**
+     * The stored type a reference points at, going by the naming of the reference classes, such as SampleRef for
+     * Sample, or SampleRelationship, which extends SampleRef. Empty for references to types that are not stored by
+     * a submittable repository.
+     */
+    private Optional<Class<? extends StoredSubmittable>> referencedType(AbstractSubsRef ref) {
+        return referencedTypes.computeIfAbsent(ref.getClass(), refClass -> {
+            Class<?> namedRefClass = refClass;
+            while (namedRefClass != null && !namedRefClass.getSimpleName().endsWith("Ref")) {
+                namedRefClass = namedRefClass.getSuperclass();
+            }
+            if (namedRefClass == null || namedRefClass.equals(AbstractSubsRef.class)) {
+                return Optional.empty();
+            }
+
+            String refName = namedRefClass.getSimpleName();
+            String typeName = refName.substring(0, refName.length() - "Ref".length());
+
+            return submittableRepositoryMap.keySet().stream()
+                    .filter(type -> type.getSimpleName().equals(typeName))
+                    .findAny();
+        });
+    }
+
+    @Value
+    private static class ReferenceKey {
+        private Class<? extends StoredSubmittable> type;
+        private String team;
+        private String alias;
+    }
+}
@@ -0,0 +1,29 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed-size run of rows of a large {@link uk.ac.ebi.subs.repository.model.sheets.Spreadsheet}, stored outside
+ * the sheet document by the {@link SheetRowStore}.
+ */
+@Document
+@CompoundIndex(name = "sheetId_chunkIndex", def = "{ 'sheetId': 1, 'chunkIndex': 1 }")
+@Data
+public class SheetRowChunk {
+
+    @Id
+    private String id;
+
+    private String sheetId;
+
+    private int chunkIndex;
+
+    private List<Row> rows = new ArrayList<>();
+}
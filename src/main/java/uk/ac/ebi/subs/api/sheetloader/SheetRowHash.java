@@ -0,0 +1,32 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * A hash of the sheet row a stored submittable was last loaded from. The {@link SheetRowHashService} uses it to
+ * spot rows of a re-uploaded sheet that would not change the submittable.
+ * Hashes live as long as the submission of their submittable, and are removed once it has been deleted.
+ */
+@Document
+@Data
+public class SheetRowHash {
+
+    @Id
+    private String submittableId;
+
+    private String hash;
+
+    private String submissionId;
+
+    /**
+     * Version of the submittable right after it was loaded from the row.
+     * Any later change to the submittable gives it a different version, which invalidates the hash.
+     */
+    private Long submittableVersion;
+
+    private Date lastModifiedDate;
+}
@@ -0,0 +1,182 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.subs.repository.model.StoredSubmittable;
+import uk.ac.ebi.subs.repository.model.Submission;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a {@link SheetRowHash} for each submittable loaded from a sheet, so the {@link SheetLoaderService} can skip
+ * the rows of a re-uploaded sheet that have not changed since they were last loaded.
+ */
+@Service
+@RequiredArgsConstructor
+public class SheetRowHashService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SheetRowHashService.class);
+
+    @NonNull
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Hashes a row together with the checklist and headers it is mapped with, as those decide what the row turns into.
+     *
+     * @param checklistId the ID of the checklist of the sheet
+     * @param headers     the cells of the header row of the sheet
+     * @param row         the row
+     * @return the hash, Base64 encoded
+     */
+    public static String rowHash(String checklistId, List<String> headers, Row row) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        update(digest, checklistId);
+        update(digest, headers);
+        update(digest, row.getCells());
+
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, List<String> values) {
+        digest.update(ByteBuffer.allocate(4).putInt(values.size()).array());
+        for (String value : values) {
+            update(digest, value);
+        }
+    }
+
+    // length prefixed, so that neighbouring values can not run into each other
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update(ByteBuffer.allocate(4).putInt(-1).array());
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    /**
+     * Finds the stored submittables that were last loaded from a row with the same hash, and have not been
+     * changed since.
+     *
+     * @param existingSubmittables the submittables of the sheet that are already stored, with their stored version
+     * @param rowHashes            the hash of each row
+     * @return the unchanged submittables, compared by identity
+     */
+    public Set<StoredSubmittable> findUnchanged(Collection<Pair<Row, ? extends StoredSubmittable>> existingSubmittables,
+                                                Map<Row, String> rowHashes) {
+        if (existingSubmittables.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        List<String> submittableIds = existingSubmittables.stream()
+                .map(pair -> pair.getSecond().getId())
+                .collect(Collectors.toList());
+
+        Map<String, SheetRowHash> storedHashes = mongoTemplate
+                .find(new Query(Criteria.where("_id").in(submittableIds)), SheetRowHash.class)
+                .stream()
+                .collect(Collectors.toMap(SheetRowHash::getSubmittableId, Function.identity()));
+
+        Set<StoredSubmittable> unchanged = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Pair<Row, ? extends StoredSubmittable> pair : existingSubmittables) {
+            StoredSubmittable storedSubmittable = pair.getSecond();
+            SheetRowHash storedHash = storedHashes.get(storedSubmittable.getId());
+
+            if (storedHash != null
+                    && Objects.equals(storedHash.getHash(), rowHashes.get(pair.getFirst()))
+                    && Objects.equals(storedHash.getSubmittableVersion(), storedSubmittable.getVersion())) {
+                unchanged.add(storedSubmittable);
+            }
+        }
+        return unchanged;
+    }
+
+    /**
+     * Stores the row hashes of submittables that have just been stored, with their new version.
+     *
+     * @param storedSubmittables the stored submittables with their rows
+     * @param rowHashes          the hash of each row
+     */
+    public void saveHashes(Collection<Pair<Row, ? extends StoredSubmittable>> storedSubmittables,
+                           Map<Row, String> rowHashes) {
+        if (storedSubmittables.isEmpty()) {
+            return;
+        }
+
+        Date now = new Date();
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SheetRowHash.class);
+
+        for (Pair<Row, ? extends StoredSubmittable> pair : storedSubmittables) {
+            StoredSubmittable storedSubmittable = pair.getSecond();
+
+            Update update = new Update();
+            update.set("hash", rowHashes.get(pair.getFirst()));
+            if (storedSubmittable.getSubmission() != null) {
+                update.set("submissionId", storedSubmittable.getSubmission().getId());
+            }
+            update.set("submittableVersion", storedSubmittable.getVersion());
+            update.set("lastModifiedDate", now);
+
+            bulkOperations.upsert(new Query(Criteria.where("_id").is(storedSubmittable.getId())), update);
+        }
+
+        try {
+            bulkOperations.execute();
+        } catch (BulkOperationException e) {
+            // a missing hash only means the row is stored again on the next upload
+            logger.warn("could not store {} of {} row hashes", e.getErrors().size(), storedSubmittables.size());
+        }
+    }
+
+    /**
+     * Removes the hashes of submittables whose submission has been deleted, along with the submittables.
+     * Hashes stored without a submission are removed too; a missing hash only means the row is stored again.
+     */
+    public void removeHashesOfDeletedSubmissions() {
+        List<?> submissionIds = mongoTemplate.getCollection(mongoTemplate.getCollectionName(SheetRowHash.class))
+                .distinct("submissionId");
+
+        for (Object submissionId : submissionIds) {
+            if (submissionId == null) {
+                continue;
+            }
+            if (!mongoTemplate.exists(new Query(Criteria.where("_id").is(submissionId)), Submission.class)) {
+                mongoTemplate.remove(new Query(Criteria.where("submissionId").is(submissionId)), SheetRowHash.class);
+            }
+        }
+
+        mongoTemplate.remove(new Query(Criteria.where("submissionId").exists(false)), SheetRowHash.class);
+    }
+}
@@ -0,0 +1,308 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads and writes the rows of a {@link Spreadsheet}, wherever they are stored.
+ *
+ * Rows of small sheets stay in the sheet document. The rows of sheets with more than
+ * {@link SheetLoaderConfig#getExternalRowsThreshold()} rows are moved into {@link SheetRowChunk} documents when the
+ * sheet is uploaded. Those sheets stay well under the Mongo document size limit, and the loader only reads one
+ * chunk of rows at a time.
+ */
+@Service
+@RequiredArgsConstructor
+public class SheetRowStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SheetRowStore.class);
+
+    private static final int ARRAY_TYPE = 4;
+
+    @NonNull
+    private MongoTemplate mongoTemplate;
+    @NonNull
+    private SheetLoaderConfig sheetLoaderConfig;
+
+    public boolean shouldExternaliseRows(Spreadsheet sheet) {
+        int threshold = sheetLoaderConfig.getExternalRowsThreshold();
+        return threshold >= 0 && sheet.getRows() != null && sheet.getRows().size() > threshold;
+    }
+
+    /**
+     * Moves the rows of a sheet that has not been stored yet into row chunks, leaving the sheet with no rows.
+     * The sheet must already have its ID.
+     */
+    public void externaliseRows(Spreadsheet sheet) {
+        List<Row> rows = sheet.getRows();
+        int chunkSize = Math.max(1, sheetLoaderConfig.getRowStoreChunkSize());
+
+        List<SheetRowChunk> chunks = new ArrayList<>();
+        for (int chunkStart = 0; chunkStart < rows.size(); chunkStart += chunkSize) {
+            int chunkIndex = chunkStart / chunkSize;
+
+            SheetRowChunk chunk = new SheetRowChunk();
+            chunk.setId(sheet.getId() + "-" + chunkIndex);
+            chunk.setSheetId(sheet.getId());
+            chunk.setChunkIndex(chunkIndex);
+            chunk.setRows(new ArrayList<>(rows.subList(chunkStart, Math.min(chunkStart + chunkSize, rows.size()))));
+            chunks.add(chunk);
+        }
+
+        mongoTemplate.insert(chunks, SheetRowChunk.class);
+
+        ExternalSheetRows externalSheetRows = new ExternalSheetRows();
+        externalSheetRows.setSheetId(sheet.getId());
+        externalSheetRows.setRowCount(rows.size());
+        externalSheetRows.setChunkSize(chunkSize);
+        externalSheetRows.setCreatedDate(new Date());
+        mongoTemplate.insert(externalSheetRows);
+
+        logger.info("stored {} rows of sheet {} in {} row chunks", rows.size(), sheet.getId(), chunks.size());
+
+        sheet.setRows(new ArrayList<>());
+    }
+
+    /**
+     * @return the details of the external rows of a sheet, empty if the rows are kept in the sheet document
+     */
+    public Optional<ExternalSheetRows> externalRows(String sheetId) {
+        return Optional.ofNullable(mongoTemplate.findById(sheetId, ExternalSheetRows.class));
+    }
+
+    public int rowCount(Spreadsheet sheet) {
+        return externalRows(sheet.getId())
+                .map(ExternalSheetRows::getRowCount)
+                .orElseGet(() -> sheet.getRows() == null ? 0 : sheet.getRows().size());
+    }
+
+    /**
+     * Reads one page of the rows of a sheet, wherever they are stored. Only the rows of the page are read.
+     *
+     * @param sheetId  the ID of the sheet
+     * @param pageable the page to read
+     * @return the rows of the page, with the number of rows in the sheet as the total
+     */
+    public Page<Row> readRows(String sheetId, Pageable pageable) {
+        Optional<ExternalSheetRows> externalRows = externalRows(sheetId);
+
+        int rowCount = externalRows.isPresent() ? externalRows.get().getRowCount() : inlineRowCount(sheetId);
+        int fromRow = (int) Math.min((long) pageable.getOffset(), rowCount);
+        int toRow = Math.min(fromRow + pageable.getPageSize(), rowCount);
+        return new PageImpl<>(readRows(sheetId, externalRows, fromRow, toRow), pageable, rowCount);
+    }
+
+    /**
+     * Counts the rows kept in a sheet document in Mongo, without reading them.
+     */
+    private int inlineRowCount(String sheetId) {
+        Aggregation rowCount = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(sheetId).and("rows").type(ARRAY_TYPE)),
+                Aggregation.project().and("rows").size().as("rowCount")
+        );
+
+        DBObject result = mongoTemplate.aggregate(rowCount, Spreadsheet.class, DBObject.class).getUniqueMappedResult();
+        return result == null ? 0 : ((Number) result.get("rowCount")).intValue();
+    }
+
+    /**
+     * Reads a range of rows of a sheet, without reading the others.
+     *
+     * @param sheetId the ID of the sheet
+     * @param fromRow index of the first row, inclusive
+     * @param toRow   index of the last row, exclusive
+     * @return the rows in the range
+     */
+    public List<Row> readRows(String sheetId, int fromRow, int toRow) {
+        return readRows(sheetId, externalRows(sheetId), fromRow, toRow);
+    }
+
+    private List<Row> readRows(String sheetId, Optional<ExternalSheetRows> externalRows, int fromRow, int toRow) {
+        if (fromRow >= toRow) {
+            return new ArrayList<>();
+        }
+
+        if (!externalRows.isPresent()) {
+            Query query = bySheetId(sheetId);
+            query.fields().slice("rows", fromRow, toRow - fromRow);
+
+            Spreadsheet sheet = mongoTemplate.findOne(query, Spreadsheet.class);
+            return sheet == null || sheet.getRows() == null ? new ArrayList<>() : sheet.getRows();
+        }
+
+        int chunkSize = externalRows.get().getChunkSize();
+        int firstChunk = fromRow / chunkSize;
+        int lastChunk = (toRow - 1) / chunkSize;
+
+        Query query = new Query(Criteria.where("sheetId").is(sheetId)
+                .and("chunkIndex").gte(firstChunk).lte(lastChunk));
+        query.with(new Sort(Sort.Direction.ASC, "chunkIndex"));
+
+        List<Row> rows = new ArrayList<>(toRow - fromRow);
+        for (SheetRowChunk chunk : mongoTemplate.find(query, SheetRowChunk.class)) {
+            rows.addAll(chunk.getRows());
+        }
+
+        int offset = Math.min(fromRow - firstChunk * chunkSize, rows.size());
+        return new ArrayList<>(rows.subList(offset, Math.min(offset + toRow - fromRow, rows.size())));
+    }
+
+    /**
+     * Writes the state of a range of rows back, without touching the other rows.
+     * Several nodes can do this for different rows of the same sheet at the same time.
+     *
+     * @param sheetId       the ID of the sheet
+     * @param firstRowIndex the index of the first row in the sheet
+     * @param rows          the rows to write
+     */
+    public void writeRows(String sheetId, int firstRowIndex, List<Row> rows) {
+        Optional<ExternalSheetRows> externalRows = externalRows(sheetId);
+
+        if (!externalRows.isPresent()) {
+            Update update = new Update();
+            for (int i = 0; i < rows.size(); i++) {
+                update.set("rows." + (firstRowIndex + i), rows.get(i));
+            }
+            update.set("lastModifiedDate", new Date());
+
+            mongoTemplate.updateFirst(bySheetId(sheetId), update, Spreadsheet.class);
+            return;
+        }
+
+        int chunkSize = externalRows.get().getChunkSize();
+        Map<Integer, Update> updatesByChunk = new LinkedHashMap<>();
+
+        for (int i = 0; i < rows.size(); i++) {
+            int rowIndex = firstRowIndex + i;
+            updatesByChunk
+                    .computeIfAbsent(rowIndex / chunkSize, chunkIndex -> new Update())
+                    .set("rows." + (rowIndex % chunkSize), rows.get(i));
+        }
+
+        updatesByChunk.forEach((chunkIndex, update) -> mongoTemplate.updateFirst(
+                new Query(Criteria.where("sheetId").is(sheetId).and("chunkIndex").is(chunkIndex)),
+                update,
+                SheetRowChunk.class
+        ));
+    }
+
+    /**
+     * Drops the rows of a loaded sheet that have no errors, wherever they are stored, leaving the rows the submitter
+     * has to fix. The remaining external rows are packed into full chunks again, so they can still be read by row
+     * index. Row indexes no longer line up with the uploaded sheet afterwards, so this is only for sheets that will
+     * not be loaded again.
+     */
+    public void pruneProcessedRows(String sheetId) {
+        Update pullProcessedRows = new Update().pull(
+                "rows", new BasicDBObject("errors.0", new BasicDBObject("$exists", false)));
+
+        mongoTemplate.updateFirst(bySheetId(sheetId), pullProcessedRows, Spreadsheet.class);
+
+        Optional<ExternalSheetRows> externalRows = externalRows(sheetId);
+        if (externalRows.isPresent()) {
+            mongoTemplate.updateMulti(
+                    new Query(Criteria.where("sheetId").is(sheetId)), pullProcessedRows, SheetRowChunk.class);
+            compactChunks(externalRows.get());
+        }
+
+        logger.debug("pruned the processed rows of sheet {}", sheetId);
+    }
+
+    /**
+     * Moves the rows of the chunks of a sheet forward, so that every chunk but the last is full again, then removes
+     * the chunks left over and records the new row count. Each chunk is only overwritten once it has been read.
+     */
+    private void compactChunks(ExternalSheetRows externalRows) {
+        String sheetId = externalRows.getSheetId();
+        int chunkSize = externalRows.getChunkSize();
+        int originalChunkCount = (externalRows.getRowCount() + chunkSize - 1) / chunkSize;
+
+        List<Row> pendingRows = new ArrayList<>();
+        int nextChunkIndex = 0;
+        int rowCount = 0;
+
+        for (int chunkIndex = 0; chunkIndex < originalChunkCount; chunkIndex++) {
+            SheetRowChunk chunk = mongoTemplate.findById(sheetId + "-" + chunkIndex, SheetRowChunk.class);
+
+            if (chunk != null) {
+                pendingRows.addAll(chunk.getRows());
+            }
+
+            while (pendingRows.size() >= chunkSize) {
+                List<Row> chunkRows = pendingRows.subList(0, chunkSize);
+                saveChunk(sheetId, nextChunkIndex++, chunkRows);
+                rowCount += chunkRows.size();
+                chunkRows.clear();
+            }
+        }
+
+        if (!pendingRows.isEmpty()) {
+            saveChunk(sheetId, nextChunkIndex++, pendingRows);
+            rowCount += pendingRows.size();
+        }
+
+        mongoTemplate.remove(
+                new Query(Criteria.where("sheetId").is(sheetId).and("chunkIndex").gte(nextChunkIndex)),
+                SheetRowChunk.class
+        );
+        mongoTemplate.updateFirst(bySheetId(sheetId), Update.update("rowCount", rowCount), ExternalSheetRows.class);
+    }
+
+    private void saveChunk(String sheetId, int chunkIndex, List<Row> rows) {
+        SheetRowChunk chunk = new SheetRowChunk();
+        chunk.setId(sheetId + "-" + chunkIndex);
+        chunk.setSheetId(sheetId);
+        chunk.setChunkIndex(chunkIndex);
+        chunk.setRows(new ArrayList<>(rows));
+
+        mongoTemplate.save(chunk);
+    }
+
+    /**
+     * Removes external rows whose sheet has been deleted.
+     * Markers younger than a day are left alone, as their sheet may still be in the middle of being stored.
+     */
+    public void removeRowsOfDeletedSheets() {
+        Calendar cal = new GregorianCalendar();
+        cal.add(Calendar.DAY_OF_MONTH, -1);
+
+        Query oldMarkers = new Query(Criteria.where("createdDate").lt(cal.getTime()));
+        oldMarkers.fields().include("_id");
+
+        for (ExternalSheetRows marker : mongoTemplate.find(oldMarkers, ExternalSheetRows.class)) {
+            if (!mongoTemplate.exists(bySheetId(marker.getSheetId()), Spreadsheet.class)) {
+                mongoTemplate.remove(new Query(Criteria.where("sheetId").is(marker.getSheetId())), SheetRowChunk.class);
+                mongoTemplate.remove(bySheetId(marker.getSheetId()), ExternalSheetRows.class);
+            }
+        }
+    }
+
+    private Query bySheetId(String sheetId) {
+        return new Query(Criteria.where("_id").is(sheetId));
+    }
+}
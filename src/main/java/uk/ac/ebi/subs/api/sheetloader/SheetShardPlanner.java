@@ -0,0 +1,80 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the rows of a sheet into shards of roughly equal size.
+ *
+ * Every row with a given alias ends up in the same shard. The shards are loaded in parallel, and each one looks up
+ * and inserts submittables by alias, so splitting an alias across shards could insert the same submittable twice.
+ * A shard is therefore only cut where no alias seen so far appears again further down the sheet.
+ */
+class SheetShardPlanner {
+
+    /**
+     * @param sheetId       the ID of the sheet
+     * @param rows          the rows of the sheet
+     * @param aliasPosition the column holding the alias, or -1 if the sheet has no alias column
+     * @param shardSize     the number of rows to aim for in each shard
+     * @return the shards, covering every row of the sheet in order
+     */
+    static List<SheetLoadShard> plan(String sheetId, List<Row> rows, int aliasPosition, int shardSize) {
+        Map<String, Integer> lastRowByAlias = new HashMap<>();
+
+        for (int i = 0; i < rows.size(); i++) {
+            String alias = sheetAlias(rows.get(i), aliasPosition);
+            if (alias != null) {
+                lastRowByAlias.put(alias, i);
+            }
+        }
+
+        List<int[]> ranges = new ArrayList<>();
+        int shardStart = 0;
+        int lastRowOfSeenAliases = -1;
+
+        for (int i = 0; i < rows.size(); i++) {
+            String alias = sheetAlias(rows.get(i), aliasPosition);
+            if (alias != null) {
+                lastRowOfSeenAliases = Math.max(lastRowOfSeenAliases, lastRowByAlias.get(alias));
+            }
+
+            int shardEnd = i + 1;
+            if (shardEnd - shardStart >= shardSize && lastRowOfSeenAliases < shardEnd) {
+                ranges.add(new int[]{shardStart, shardEnd});
+                shardStart = shardEnd;
+            }
+        }
+
+        if (shardStart < rows.size()) {
+            ranges.add(new int[]{shardStart, rows.size()});
+        }
+
+        List<SheetLoadShard> shards = new ArrayList<>(ranges.size());
+        for (int shardIndex = 0; shardIndex < ranges.size(); shardIndex++) {
+            int[] range = ranges.get(shardIndex);
+            shards.add(new SheetLoadShard(sheetId, range[0], range[1], shardIndex, ranges.size()));
+        }
+
+        return shards;
+    }
+
+    /**
+     * @return the alias of a row as sheet loading compares aliases, trimmed, or null if the row has none
+     */
+    static String sheetAlias(Row row, int aliasPosition) {
+        if (aliasPosition < 0 || aliasPosition >= row.getCells().size()) {
+            return null;
+        }
+
+        String alias = row.getCells().get(aliasPosition);
+        if (alias == null || alias.trim().isEmpty()) {
+            return null;
+        }
+        return alias.trim();
+    }
+}
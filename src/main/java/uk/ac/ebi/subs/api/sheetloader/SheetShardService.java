@@ -0,0 +1,131 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.subs.messaging.Exchanges;
+import uk.ac.ebi.subs.repository.model.Checklist;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.sheets.SheetStatusEnum;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+import uk.ac.ebi.subs.repository.repos.ChecklistRepository;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * This is a Spring @Service component for loading large {@link Spreadsheet}s on several API nodes.
+ *
+ * The node that receives the submitted sheet splits it into row ranges and publishes one {@link SheetLoadShard}
+ * message per range, once per sheet. Whichever node picks up a shard, and gets its lease, loads just those rows.
+ * The node that finishes the last shard marks the sheet as completed.
+ */
+@Service
+@RequiredArgsConstructor
+public class SheetShardService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SheetShardService.class);
+
+    @NonNull
+    private SheetLoaderConfig sheetLoaderConfig;
+    @NonNull
+    private ChecklistRepository checklistRepository;
+    @NonNull
+    private ColumnMappingPlanCache columnMappingPlanCache;
+    @NonNull
+    private SheetLoadProgressService sheetLoadProgressService;
+    @NonNull
+    private RabbitMessagingTemplate rabbitMessagingTemplate;
+    @NonNull
+    private MongoTemplate mongoTemplate;
+    @NonNull
+    private SheetRowStore sheetRowStore;
+
+    public boolean shouldShard(Spreadsheet sheet) {
+        return sheetLoaderConfig.isShardedLoading() && sheetRowStore.rowCount(sheet) > sheetLoaderConfig.getShardSize();
+    }
+
+    public List<SheetLoadShard> publishShards(Spreadsheet sheet) {
+        Checklist checklist = checklistRepository.findOne(sheet.getChecklistId());
+        ColumnMappingPlan columnMappingPlan = columnMappingPlanCache.planFor(checklist, sheet.getHeaderRow());
+
+        int rowCount = sheetRowStore.rowCount(sheet);
+        List<Row> rows = sheetRowStore.externalRows(sheet.getId()).isPresent()
+                ? sheetRowStore.readRows(sheet.getId(), 0, rowCount)
+                : sheet.getRows();
+
+        List<SheetLoadShard> shards = SheetShardPlanner.plan(
+                sheet.getId(),
+                rows,
+                columnMappingPlan.getAliasPosition(),
+                Math.max(1, sheetLoaderConfig.getShardSize())
+        );
+
+        if (!sheetLoadProgressService.startShardedLoad(sheet, rowCount, shards.size())) {
+            logger.info("shards of sheet {} have already been published, ignoring redelivered sheet", sheet.getId());
+            return Collections.emptyList();
+        }
+
+        for (SheetLoadShard shard : shards) {
+            rabbitMessagingTemplate.convertAndSend(
+                    Exchanges.SUBMISSIONS,
+                    SheetLoaderQueueConfig.SHEET_SHARD_ROUTING_KEY,
+                    shard
+            );
+        }
+
+        logger.info("published {} shards for sheet {} with {} rows", shards.size(), sheet.getId(), rowCount);
+
+        return shards;
+    }
+
+    /**
+     * Reads a sheet with only the rows of the given shard.
+     */
+    public Spreadsheet findShardSheet(SheetLoadShard shard) {
+        Spreadsheet sheet = sheetLoadProgressService.findSheetWithoutRows(shard.getSheetId());
+
+        if (sheet != null) {
+            sheet.setRows(sheetRowStore.readRows(shard.getSheetId(), shard.getFromRow(), shard.getToRow()));
+        }
+
+        return sheet;
+    }
+
+    /**
+     * Records that a shard has been loaded, and completes the sheet once all of its shards have been loaded.
+     */
+    public void completeShard(SheetLoadShard shard) {
+        boolean allShardsCompleted = sheetLoadProgressService.recordShardCompleted(shard);
+
+        if (!allShardsCompleted) {
+            return;
+        }
+
+        Update update = new Update();
+        update.set("status", SheetStatusEnum.Completed);
+        update.set("lastModifiedDate", new Date());
+        update.inc("version", 1);
+
+        mongoTemplate.updateFirst(bySheetId(shard.getSheetId()), update, Spreadsheet.class);
+        sheetLoadProgressService.markCompleted(shard.getSheetId());
+
+        if (sheetLoaderConfig.isPruneProcessedRows()) {
+            sheetRowStore.pruneProcessedRows(shard.getSheetId());
+        }
+
+        logger.info("all {} shards of sheet {} loaded", shard.getShardCount(), shard.getSheetId());
+    }
+
+    private Query bySheetId(String sheetId) {
+        return new Query(Criteria.where("_id").is(sheetId));
+    }
+}
@@ -0,0 +1,175 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.gridfs.GridFSDBFile;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsCriteria;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import uk.ac.ebi.subs.api.services.SheetUploadReader;
+import uk.ac.ebi.subs.api.validators.SheetValidator;
+import uk.ac.ebi.subs.api.validators.SubsApiErrors;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+import uk.ac.ebi.subs.repository.repos.SpreadsheetRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the bodies of asynchronous sheet uploads in GridFS until a loader reads them into rows.
+ *
+ * The body is stored as it was sent, still compressed if it was sent compressed, under the ID of its sheet.
+ * Accepting an upload then only costs copying its bytes, and any node can read it from the sheet submitted queue.
+ */
+@Service
+@RequiredArgsConstructor
+public class SheetUploadStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SheetUploadStore.class);
+
+    private static final String CONTENT_ENCODING_METADATA = "contentEncoding";
+
+    @NonNull
+    private GridFsTemplate gridFsTemplate;
+    @NonNull
+    private SheetUploadReader sheetUploadReader;
+    @NonNull
+    private SpreadsheetRepository spreadsheetRepository;
+    @NonNull
+    private SheetRowStore sheetRowStore;
+    @NonNull
+    private SheetLoadProgressService sheetLoadProgressService;
+    @NonNull
+    private SheetValidator sheetValidator;
+
+    /**
+     * Stores the body of an upload for a sheet that has not been stored yet.
+     *
+     * @param sheetId         the ID the sheet will be stored with
+     * @param body            the request body
+     * @param contentType     the content type of the request
+     * @param contentEncoding the content encoding of the request, or null if there is none
+     */
+    public void stage(String sheetId, InputStream body, MediaType contentType, String contentEncoding) {
+        DBObject metadata = new BasicDBObject();
+        if (contentEncoding != null) {
+            metadata.put(CONTENT_ENCODING_METADATA, contentEncoding);
+        }
+
+        gridFsTemplate.store(body, sheetId, contentType == null ? null : contentType.toString(), metadata);
+    }
+
+    /**
+     * Reads the staged upload of a sheet into its header and rows, and stores them with the sheet.
+     * The upload gets the checks the {@link SheetValidator} makes on the rows of a synchronous upload.
+     * An upload that cannot be read or fails those checks fails the load of the sheet: the failure is recorded on the
+     * progress of the sheet, and the sheet is left in its submitted state without rows. The staged upload is removed
+     * either way.
+     *
+     * @param sheet the sheet, as stored when the upload was accepted
+     * @return the sheet with its rows, or null if the upload could not be read
+     */
+    public Spreadsheet unstage(Spreadsheet sheet) {
+        String sheetId = sheet.getId();
+
+        // a redelivered message finds the rows already read
+        if (sheet.getHeaderRow() != null) {
+            discard(sheetId);
+            return sheet;
+        }
+        if (isFailedUpload(sheet)) {
+            discard(sheetId);
+            return null;
+        }
+
+        String failureMessage;
+        try {
+            Spreadsheet upload = readStaged(sheetId);
+            failureMessage = checkContent(upload);
+
+            if (failureMessage == null) {
+                sheet.setHeaderRow(upload.getHeaderRow());
+                sheet.setRows(upload.getRows());
+
+                if (sheetRowStore.shouldExternaliseRows(sheet)) {
+                    sheetRowStore.externaliseRows(sheet);
+                }
+
+                sheet = spreadsheetRepository.save(sheet);
+                discard(sheetId);
+
+                return sheet;
+            }
+        } catch (IOException | IllegalStateException | HttpMessageNotReadableException e) {
+            // the CSV parser reports unreadable content as an IllegalStateException
+            logger.info("could not read the upload of sheet {}: {}", sheetId, e.getMessage());
+            failureMessage = "Could not read the uploaded file: " + e.getMessage();
+        }
+
+        sheetLoadProgressService.markFailed(sheetId, failureMessage);
+        discard(sheetId);
+
+        return null;
+    }
+
+    /**
+     * Removes the staged upload of a sheet, if it has one.
+     */
+    public void discard(String sheetId) {
+        gridFsTemplate.delete(byFilename(sheetId));
+    }
+
+    private Spreadsheet readStaged(String sheetId) throws IOException {
+        GridFSDBFile file = gridFsTemplate.findOne(byFilename(sheetId));
+
+        if (file == null) {
+            throw new IOException("the uploaded file is no longer available");
+        }
+
+        MediaType contentType = file.getContentType() == null ? null : MediaType.parseMediaType(file.getContentType());
+        String contentEncoding = file.getMetaData() == null ? null : (String) file.getMetaData().get(CONTENT_ENCODING_METADATA);
+
+        try (InputStream body = file.getInputStream()) {
+            return sheetUploadReader.read(body, contentType, contentEncoding);
+        }
+    }
+
+    /**
+     * @return why the upload can not be loaded, or null if it can
+     */
+    private String checkContent(Spreadsheet upload) {
+        Errors errors = new BeanPropertyBindingResult(upload, "spreadsheet");
+        sheetValidator.validateContent(upload, errors);
+
+        if (!errors.hasErrors()) {
+            return null;
+        }
+
+        return errors.getFieldErrors().stream()
+                .map(error -> error.getField() + ": " + SubsApiErrors.valueOf(error.getCode()).description())
+                .collect(Collectors.joining("; ", "The uploaded file is not a valid sheet (", ")"));
+    }
+
+    /**
+     * @return true if the upload of the sheet has already failed to load
+     */
+    private boolean isFailedUpload(Spreadsheet sheet) {
+        SheetLoadProgress progress = sheetLoadProgressService.findProgress(sheet.getId());
+
+        return progress != null && SheetLoadStage.Failed.equals(progress.getStage());
+    }
+
+    private Query byFilename(String sheetId) {
+        return new Query(GridFsCriteria.whereFilename().is(sheetId));
+    }
+}
@@ -30,18 +30,8 @@ public class SheetValidator implements Validator {
 
         if (batch.getId() == null || sheetRepository.findOne(batch.getId()) == null) {
             //create
-            if (batch.getSubmissionId() == null) {
-                SubsApiErrors.missing_field.addError(errors, "submissionId");
-            }
-            if (batch.getChecklistId() == null) {
-                SubsApiErrors.missing_field.addError(errors, "checklistId");
-            }
-            if (batch.getRows() == null || batch.getRows().isEmpty()) {
-                SubsApiErrors.missing_field.addError(errors, "rows");
-            }
-            if (batch.getHeaderRow() == null || batch.getHeaderRow().getCells().isEmpty()) {
-                SubsApiErrors.missing_field.addError(errors, "headerRow");
-            }
+            validateDestination(batch, errors);
+            validateContent(batch, errors);
         } else {
             //update
             SubsApiErrors.resource_locked.addError(errors);
@@ -49,5 +39,30 @@ public class SheetValidator implements Validator {
 
     }
 
+    /**
+     * Checks the submission and checklist of a new sheet.
+     * Asynchronous uploads are checked this far when they are accepted.
+     */
+    public void validateDestination(Spreadsheet batch, Errors errors) {
+        if (batch.getSubmissionId() == null) {
+            SubsApiErrors.missing_field.addError(errors, "submissionId");
+        }
+        if (batch.getChecklistId() == null) {
+            SubsApiErrors.missing_field.addError(errors, "checklistId");
+        }
+    }
+
+    /**
+     * Checks the header row and rows of a new sheet.
+     * Asynchronous uploads are checked this far once their file has been read.
+     */
+    public void validateContent(Spreadsheet batch, Errors errors) {
+        if (batch.getRows() == null || batch.getRows().isEmpty()) {
+            SubsApiErrors.missing_field.addError(errors, "rows");
+        }
+        if (batch.getHeaderRow() == null || batch.getHeaderRow().getCells().isEmpty()) {
+            SubsApiErrors.missing_field.addError(errors, "headerRow");
+        }
+    }
 
 }
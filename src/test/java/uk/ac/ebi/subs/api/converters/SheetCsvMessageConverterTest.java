@@ -0,0 +1,62 @@
+package uk.ac.ebi.subs.api.converters;
+
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class SheetCsvMessageConverterTest {
+
+    private static final String CSV = "alias,taxon id\ns1,9606\n";
+
+    @Test
+    public void decode_gzip_content_encoding() throws IOException {
+        InputStream body = SheetCsvMessageConverter.decodeBody(
+                new ByteArrayInputStream(gzip(CSV)), SheetCsvMessageConverter.CSV_MEDIA_TYPE, "gzip");
+
+        assertEquals(CSV, read(body));
+    }
+
+    @Test
+    public void decode_gzip_file() throws IOException {
+        InputStream body = SheetCsvMessageConverter.decodeBody(
+                new ByteArrayInputStream(gzip(CSV)), SheetCsvMessageConverter.GZIP_MEDIA_TYPE, null);
+
+        assertEquals(CSV, read(body));
+    }
+
+    @Test
+    public void plain_csv_is_read_as_it_is() throws IOException {
+        InputStream body = SheetCsvMessageConverter.decodeBody(
+                new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)), SheetCsvMessageConverter.CSV_MEDIA_TYPE, null);
+
+        assertEquals(CSV, read(body));
+    }
+
+    @Test(expected = HttpMessageNotReadableException.class)
+    public void plain_csv_sent_as_gzip_is_rejected() throws IOException {
+        SheetCsvMessageConverter.decodeBody(
+                new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)), MediaType.valueOf("text/csv"), "gzip");
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String read(InputStream body) throws IOException {
+        return StreamUtils.copyToString(body, StandardCharsets.UTF_8);
+    }
+}
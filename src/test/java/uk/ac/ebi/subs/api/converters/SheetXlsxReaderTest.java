@@ -0,0 +1,92 @@
+package uk.ac.ebi.subs.api.converters;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import uk.ac.ebi.subs.api.services.SheetService;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SheetXlsxReaderTest {
+
+    private SheetXlsxReader sheetXlsxReader = new SheetXlsxReader();
+
+    @Test
+    public void read_rows_of_the_first_worksheet() throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet samples = workbook.createSheet("samples");
+        addRow(samples, 0, "alias", "taxon id", "taxon", "height");
+        addRow(samples, 1, "s1", 9606, "Homo sapiens", 1.7);
+        // a row with a gap and without its last cell, after a missing row
+        Row row = samples.createRow(3);
+        row.createCell(0).setCellValue("s2");
+        row.createCell(2).setCellValue("Mus musculus");
+        addRow(workbook.createSheet("other"), 0, "ignored");
+
+        List<List<String>> rows = new ArrayList<>();
+        sheetXlsxReader.read(new ByteArrayInputStream(bytes(workbook)), rows::add);
+
+        assertEquals(
+                Arrays.asList(
+                        Arrays.asList("alias", "taxon id", "taxon", "height"),
+                        Arrays.asList("s1", "9606", "Homo sapiens", "1.7"),
+                        Arrays.asList("s2", "", "Mus musculus")
+                ),
+                rows
+        );
+    }
+
+    @Test
+    public void rows_go_through_the_sheet_pre_processing() throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet samples = workbook.createSheet("samples");
+        addRow(samples, 0, "# a comment");
+        addRow(samples, 1, "alias", "taxon id", "taxon");
+        addRow(samples, 2, "s1", 9606);
+
+        SheetService.SheetBuilder sheetBuilder = new SheetService().sheetBuilder().padShortRows();
+        sheetXlsxReader.read(new ByteArrayInputStream(bytes(workbook)), sheetBuilder::addRow);
+        Spreadsheet sheet = sheetBuilder.build();
+
+        assertEquals(Arrays.asList("alias", "taxon id", "taxon"), sheet.getHeaderRow().getCells());
+        assertEquals(Arrays.asList("s1", "9606", ""), sheet.getRows().get(0).getCells());
+    }
+
+    @Test(expected = HttpMessageNotReadableException.class)
+    public void reject_a_file_that_is_not_a_workbook() throws IOException {
+        sheetXlsxReader.read(
+                new ByteArrayInputStream("alias,taxon id\ns1,9606\n".getBytes(StandardCharsets.UTF_8)),
+                row -> {
+                }
+        );
+    }
+
+    private static void addRow(Sheet sheet, int rowIndex, Object... values) {
+        Row row = sheet.createRow(rowIndex);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof Number) {
+                row.createCell(i).setCellValue(((Number) values[i]).doubleValue());
+            } else {
+                row.createCell(i).setCellValue((String) values[i]);
+            }
+        }
+    }
+
+    private static byte[] bytes(XSSFWorkbook workbook) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        workbook.write(bytes);
+        workbook.close();
+        return bytes.toByteArray();
+    }
+}
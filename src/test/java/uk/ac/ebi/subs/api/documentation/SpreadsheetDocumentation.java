@@ -1,5 +1,7 @@
 package uk.ac.ebi.subs.api.documentation;
 
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -12,7 +14,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsCriteria;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.data.rest.webmvc.RestMediaTypes;
+import org.springframework.http.HttpHeaders;
 import org.springframework.restdocs.JUnitRestDocumentation;
 import org.springframework.restdocs.mockmvc.MockMvcRestDocumentationConfigurer;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -22,6 +29,9 @@ import org.springframework.web.context.WebApplicationContext;
 import uk.ac.ebi.subs.ApiApplication;
 import uk.ac.ebi.subs.DocumentationProducer;
 import uk.ac.ebi.subs.api.Helpers;
+import uk.ac.ebi.subs.api.sheetloader.SheetLoadProgress;
+import uk.ac.ebi.subs.api.sheetloader.SheetLoadProgressService;
+import uk.ac.ebi.subs.api.sheetloader.SheetLoadStage;
 import uk.ac.ebi.subs.repository.model.Checklist;
 import uk.ac.ebi.subs.repository.model.Submission;
 import uk.ac.ebi.subs.repository.model.sheets.Row;
@@ -36,7 +46,12 @@ import uk.ac.ebi.subs.repository.repos.SpreadsheetRepository;
 import uk.ac.ebi.subs.repository.repos.SubmissionRepository;
 import uk.ac.ebi.subs.repository.repos.status.SubmissionStatusRepository;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import static org.springframework.restdocs.hypermedia.HypermediaDocumentation.halLinks;
 import static org.springframework.restdocs.hypermedia.HypermediaDocumentation.linkWithRel;
@@ -87,6 +102,15 @@ public class SpreadsheetDocumentation {
     @Autowired
     private SubmissionStatusRepository submissionStatusRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GridFsTemplate gridFsTemplate;
+
+    @Autowired
+    private SheetLoadProgressService sheetLoadProgressService;
+
     private MockMvc mockMvc;
     private Template template;
     private Submission submission;
@@ -134,6 +158,8 @@ public class SpreadsheetDocumentation {
         this.checklistRepository.deleteAll();
         this.submissionRepository.deleteAll();
         this.submissionStatusRepository.deleteAll();
+        this.mongoTemplate.remove(new Query(), SheetLoadProgress.class);
+        this.gridFsTemplate.delete(new Query());
     }
 
     private Submission storeSubmission() {
@@ -161,6 +187,129 @@ public class SpreadsheetDocumentation {
         uploadCsvAsSheet("sheet-csv-upload-rep-2");
     }
 
+    @Test
+    public void asyncSheetUpload() throws Exception {
+        this.mockMvc.perform(
+                post("/api/submissions/{submissionId}/spreadsheet?checklistId={checklistId}&async=true",
+                        submission.getId(),
+                        checklist.getId())
+                        .contentType("text/csv")
+                        .accept(RestMediaTypes.HAL_JSON)
+                        .content(csv())
+        ).andExpect(status().isAccepted())
+                .andDo(
+                        document("sheet-csv-async-upload",
+                                preprocessRequest(prettyPrint(), addAuthTokenHeader()),
+                                preprocessResponse(prettyPrint()),
+                                links(
+                                        halLinks(),
+                                        selfRelLink(),
+                                        linkWithRel("spreadsheet").description("Link to the uploaded spreadsheet"),
+                                        linkWithRel("submission").description("Link to the submission this upload is associated with"),
+                                        linkWithRel("checklist").description("Link to the checklist used to process this data"),
+                                        linkWithRel("dataType").description("Link to the data type definition for this data"),
+                                        linkWithRel("progress").description("Link to the reading and loading progress of this spreadsheet")
+                                )
+                        )
+                );
+
+        Spreadsheet sheet = spreadsheetRepository.findAll().get(0);
+        Assert.assertEquals(SheetStatusEnum.Submitted, sheet.getStatus());
+        Assert.assertNull(sheet.getHeaderRow());
+        Assert.assertNotNull(gridFsTemplate.findOne(new Query(GridFsCriteria.whereFilename().is(sheet.getId()))));
+        Assert.assertEquals(SheetLoadStage.Staged, sheetLoadProgressService.findProgress(sheet.getId()).getStage());
+    }
+
+    @Test
+    public void uploadXlsxSheet() throws Exception {
+        this.mockMvc.perform(
+                post("/api/submissions/{submissionId}/spreadsheet?checklistId={checklistId}",
+                        submission.getId(),
+                        checklist.getId())
+                        .contentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+                        .accept(RestMediaTypes.HAL_JSON)
+                        .content(xlsx())
+        ).andExpect(status().isCreated());
+
+        Spreadsheet sheet = spreadsheetRepository.findAll().get(0);
+        Assert.assertEquals(Arrays.asList(headerCells), sheet.getHeaderRow().getCells());
+        Assert.assertEquals(Arrays.asList(row1Cells), sheet.getRows().get(0).getCells());
+        Assert.assertEquals(2, sheet.getRows().size());
+    }
+
+    private byte[] xlsx() throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet worksheet = workbook.createSheet("samples");
+            String[][] rows = {headerCells, row1Cells, row2Cells};
+
+            for (int rowIndex = 0; rowIndex < rows.length; rowIndex++) {
+                org.apache.poi.ss.usermodel.Row row = worksheet.createRow(rowIndex);
+                for (int i = 0; i < rows[rowIndex].length; i++) {
+                    row.createCell(i).setCellValue(rows[rowIndex][i]);
+                }
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            workbook.write(bytes);
+            return bytes.toByteArray();
+        }
+    }
+
+    @Test
+    public void uploadGzipEncodedSheet() throws Exception {
+        this.mockMvc.perform(
+                post("/api/submissions/{submissionId}/spreadsheet?checklistId={checklistId}",
+                        submission.getId(),
+                        checklist.getId())
+                        .contentType("text/csv")
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .accept(RestMediaTypes.HAL_JSON)
+                        .content(gzip(csv()))
+        ).andExpect(status().isCreated());
+
+        Spreadsheet sheet = spreadsheetRepository.findAll().get(0);
+        Assert.assertEquals(Arrays.asList(headerCells), sheet.getHeaderRow().getCells());
+        Assert.assertEquals(2, sheet.getRows().size());
+    }
+
+    @Test
+    public void uploadGzipFileSheet() throws Exception {
+        this.mockMvc.perform(
+                post("/api/submissions/{submissionId}/spreadsheet?checklistId={checklistId}",
+                        submission.getId(),
+                        checklist.getId())
+                        .contentType("application/gzip")
+                        .accept(RestMediaTypes.HAL_JSON)
+                        .content(gzip(csv()))
+        ).andExpect(status().isCreated());
+
+        Spreadsheet sheet = spreadsheetRepository.findAll().get(0);
+        Assert.assertEquals(2, sheet.getRows().size());
+    }
+
+    @Test
+    public void uploadSheetWithBrokenGzipEncodingExpectBadRequest() throws Exception {
+        this.mockMvc.perform(
+                post("/api/submissions/{submissionId}/spreadsheet?checklistId={checklistId}",
+                        submission.getId(),
+                        checklist.getId())
+                        .contentType("text/csv")
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .accept(RestMediaTypes.HAL_JSON)
+                        .content(csv())
+        ).andExpect(status().isBadRequest());
+
+        Assert.assertEquals(0, spreadsheetRepository.count());
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
     @Test
     public void fetchSheet() throws Exception {
         Spreadsheet sheet = new Spreadsheet();
@@ -190,7 +339,8 @@ public class SpreadsheetDocumentation {
                                         linkWithRel("spreadsheet").description("Link to the uploaded spreadsheet"),
                                         linkWithRel("submission").description("Link to the submission this upload is associated with"),
                                         linkWithRel("checklist").description("Link to the checklist used to process this data"),
-                                        linkWithRel("dataType").description("Link to the data type definition for this data")
+                                        linkWithRel("dataType").description("Link to the data type definition for this data"),
+                                        linkWithRel("progress").description("Link to the loading progress of this spreadsheet")
                                 ),
                                 responseFields(
                                         linksResponseField(),
@@ -211,6 +361,95 @@ public class SpreadsheetDocumentation {
 
     }
 
+    @Test
+    public void fetchSheetProgress() throws Exception {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setStatus(SheetStatusEnum.Submitted);
+        sheet.setChecklistId(checklist.getId());
+        sheet.setDataTypeId(checklist.getDataTypeId());
+        sheet.setSubmissionId(submission.getId());
+        sheet.setTeam(submission.getTeam());
+        sheet.setHeaderRow(new Row(headerCells));
+        sheet.addRow(row1Cells);
+        sheet.addRow(row2Cells);
+
+        spreadsheetRepository.insert(sheet);
+
+        this.mockMvc.perform(
+                get("/api/spreadsheets/{id}/progress",
+                        sheet.getId())
+                        .accept(RestMediaTypes.HAL_JSON)
+        ).andExpect(status().isOk())
+                .andDo(
+                        document("fetch-sheet-progress",
+                                preprocessRequest(prettyPrint(), addAuthTokenHeader()),
+                                preprocessResponse(prettyPrint()),
+                                links(
+                                        halLinks(),
+                                        selfRelLink(),
+                                        linkWithRel("stream").description("Link to a server-sent events stream of the loading progress")
+                                ),
+                                responseFields(
+                                        linksResponseField(),
+                                        fieldWithPath("sheetId").description("ID of the spreadsheet being loaded"),
+                                        fieldWithPath("submissionId").description("ID of the submission the spreadsheet was uploaded to"),
+                                        fieldWithPath("stage").description("Current loading stage: Staged, Queued, Loading, Completed or Failed"),
+                                        fieldWithPath("stageTimestamps").description("When the load entered each stage"),
+                                        fieldWithPath("totalRows").description("Number of rows in the spreadsheet"),
+                                        fieldWithPath("completedRows").description("Number of rows that have been worked through"),
+                                        fieldWithPath("processedRows").description("Number of rows that have been loaded"),
+                                        fieldWithPath("failedRows").description("Number of rows that could not be loaded because of errors"),
+                                        fieldWithPath("skippedRows").description("Number of rows that were not loaded again because they had not changed since the last upload"),
+                                        fieldWithPath("attempts").description("Number of times loading of the spreadsheet has been started"),
+                                        fieldWithPath("shardCount").description("Number of shards the spreadsheet is loaded in, 0 when it is loaded in one go"),
+                                        fieldWithPath("shardCompletedRows").description("Number of rows worked through in each shard, by shard index"),
+                                        fieldWithPath("shardAttempts").description("Number of times loading of each shard has been started, by shard index"),
+                                        fieldWithPath("completedShards").description("Indexes of the shards that have been loaded"),
+                                        fieldWithPath("failureMessage").optional().description("Why the spreadsheet could not be read, when it is in the Failed stage"),
+                                        fieldWithPath("lastModifiedDate").ignored()
+                                )
+                        )
+                );
+    }
+
+    @Test
+    public void dryRunSheetUpload() throws Exception {
+        final String comma = ",";
+        String[] rowWithoutAlias = new String[]{"", "9606", "Homo sapiens", "1.7", "meters"};
+
+        String csv = String.join("\n",
+                String.join(comma, headerCells), //header
+                String.join(comma, row1Cells),
+                String.join(comma, rowWithoutAlias)
+        );
+
+        this.mockMvc.perform(
+                post("/api/submissions/{submissionId}/spreadsheet?checklistId={checklistId}&dryRun=true&rows={rows}",
+                        submission.getId(),
+                        checklist.getId(),
+                        10)
+                        .contentType("text/csv")
+                        .accept(RestMediaTypes.HAL_JSON)
+                        .content(csv)
+        ).andExpect(status().isOk())
+                .andDo(
+                        document("sheet-csv-dry-run",
+                                preprocessRequest(prettyPrint(), addAuthTokenHeader()),
+                                preprocessResponse(prettyPrint()),
+                                responseFields(
+                                        fieldWithPath("totalRows").description("Number of rows in the spreadsheet"),
+                                        fieldWithPath("previewedRows").description("Number of rows, from the start of the spreadsheet, that were checked"),
+                                        fieldWithPath("failedRows").description("Number of checked rows with errors"),
+                                        fieldWithPath("rowErrors").description("The errors of each checked row that has any"),
+                                        fieldWithPath("rowErrors[].rowIndex").description("Index of the row in the rows of the spreadsheet"),
+                                        fieldWithPath("rowErrors[].errors").description("The errors of the row")
+                                )
+                        )
+                );
+
+        Assert.assertEquals(0, spreadsheetRepository.count());
+    }
+
     @Test
     public void uploadEmptyCsvExpectValidationError() throws Exception {
         this.mockMvc.perform(
@@ -243,14 +482,18 @@ public class SpreadsheetDocumentation {
     private final String[] row1Cells = new String[]{"s1", "9606", "Homo sapiens", "1.7", "meters"};
     private final String[] row2Cells = new String[]{"s2", "9606", "Homo sapiens", "1.7", "meters"};
 
-    private Spreadsheet uploadCsvAsSheet(String snippetName) throws Exception {
+    private String csv() {
         final String comma = ",";
 
-        String csv = String.join("\n",
+        return String.join("\n",
                 String.join(comma, headerCells), //header
                 String.join(comma, row1Cells),
                 String.join(comma, row2Cells)
         );
+    }
+
+    private Spreadsheet uploadCsvAsSheet(String snippetName) throws Exception {
+        String csv = csv();
 
 
         this.mockMvc.perform(
@@ -271,7 +514,8 @@ public class SpreadsheetDocumentation {
                                         linkWithRel("spreadsheet").description("Link to the uploaded spreadsheet"),
                                         linkWithRel("submission").description("Link to the submission this upload is associated with"),
                                         linkWithRel("checklist").description("Link to the checklist used to process this data"),
-                                        linkWithRel("dataType").description("Link to the data type definition for this data")
+                                        linkWithRel("dataType").description("Link to the data type definition for this data"),
+                                        linkWithRel("progress").description("Link to the loading progress of this spreadsheet")
                                 ),
                                 responseFields(
                                         linksResponseField(),
@@ -0,0 +1,49 @@
+package uk.ac.ebi.subs.api.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SheetCellInternerTest {
+
+    private SheetCellInterner interner = new SheetCellInterner();
+
+    @Test
+    public void equal_values_of_a_column_are_shared() {
+        String first = interner.intern(1, new String("Homo sapiens"));
+        String second = interner.intern(1, new String("Homo sapiens"));
+
+        assertEquals("Homo sapiens", second);
+        assertSame(first, second);
+    }
+
+    @Test
+    public void columns_are_interned_separately() {
+        String first = interner.intern(1, new String("meters"));
+        String second = interner.intern(2, new String("meters"));
+
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void empty_and_null_values() {
+        assertSame("", interner.intern(0, new String("")));
+        assertNull(interner.intern(0, null));
+    }
+
+    @Test
+    public void columns_of_distinct_values_stop_being_interned() {
+        for (int i = 0; i < SheetCellInterner.SAMPLE_SIZE; i++) {
+            interner.intern(0, "s" + i);
+        }
+
+        String first = interner.intern(0, new String("s1"));
+        String second = interner.intern(0, new String("s1"));
+
+        assertEquals(first, second);
+        assertNotSame(first, second);
+    }
+}
@@ -0,0 +1,96 @@
+package uk.ac.ebi.subs.api.services;
+
+import org.apache.commons.csv.CSVParser;
+import org.junit.Test;
+import uk.ac.ebi.subs.api.converters.SheetCsvMessageConverter;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SheetServiceTest {
+
+    private SheetService sheetService = new SheetService();
+
+    private SheetCsvMessageConverter sheetCsvMessageConverter = new SheetCsvMessageConverter();
+
+    @Test
+    public void pre_process_rows_while_reading_them() throws IOException {
+        String csv = String.join("\n",
+                "# a comment before the header,,,,",
+                ",,,,,",
+                "alias,taxon id,taxon,,,,",
+                "s1,9606,Homo sapiens,,,,",
+                ",,,,,,",
+                "#s2,9606,Homo sapiens",
+                "s3,9606,,,,,,",
+                "s4,,Homo sapiens,extra,,,"
+        );
+
+        Spreadsheet sheet = preProcess(csv);
+
+        assertEquals(Arrays.asList("alias", "taxon id", "taxon", ""), sheet.getHeaderRow().getCells());
+        assertEquals(
+                Arrays.asList(
+                        Arrays.asList("s1", "9606", "Homo sapiens", ""),
+                        Arrays.asList("s3", "9606", "", ""),
+                        Arrays.asList("s4", "", "Homo sapiens", "extra")
+                ),
+                cells(sheet.getRows())
+        );
+    }
+
+    @Test
+    public void comment_lines_count_towards_the_width_of_the_sheet() throws IOException {
+        String csv = String.join("\n",
+                "# a comment,,,wide comment,,",
+                "alias,taxon id,,,,",
+                "s1,9606,,,,"
+        );
+
+        Spreadsheet sheet = preProcess(csv);
+
+        assertEquals(Arrays.asList("alias", "taxon id", "", ""), sheet.getHeaderRow().getCells());
+        assertEquals(Arrays.asList(Arrays.asList("s1", "9606", "", "")), cells(sheet.getRows()));
+    }
+
+    @Test
+    public void short_csv_rows_are_not_padded() throws IOException {
+        String csv = String.join("\n",
+                "alias,taxon id,taxon",
+                "s1,9606"
+        );
+
+        Spreadsheet sheet = preProcess(csv);
+
+        assertEquals(Arrays.asList("alias", "taxon id", "taxon"), sheet.getHeaderRow().getCells());
+        assertEquals(Arrays.asList(Arrays.asList("s1", "9606")), cells(sheet.getRows()));
+    }
+
+    @Test
+    public void pre_process_empty_stream() throws IOException {
+        Spreadsheet sheet = preProcess("");
+
+        assertNull(sheet.getHeaderRow());
+        assertEquals(0, sheet.getRows().size());
+    }
+
+    private Spreadsheet preProcess(String csv) throws IOException {
+        try (CSVParser csvParser = sheetCsvMessageConverter.parse(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))) {
+            return sheetService.preProcessRows(csvParser);
+        }
+    }
+
+    private static List<List<String>> cells(List<Row> rows) {
+        return rows.stream().map(Row::getCells).collect(Collectors.toList());
+    }
+}
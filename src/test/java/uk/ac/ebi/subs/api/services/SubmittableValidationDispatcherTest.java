@@ -0,0 +1,104 @@
+package uk.ac.ebi.subs.api.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import uk.ac.ebi.subs.api.config.ValidationDispatchConfig;
+import uk.ac.ebi.subs.messaging.Exchanges;
+import uk.ac.ebi.subs.repository.model.Sample;
+import uk.ac.ebi.subs.repository.model.Submission;
+import uk.ac.ebi.subs.validator.data.ValidationEnvelopeToCoordinator;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SubmittableValidationDispatcherTest {
+
+    private static final String SAMPLE_UPDATED = "usi.submittable.updated.sample";
+
+    private RabbitMessagingTemplate rabbitMessagingTemplate;
+    private RabbitTemplate rabbitTemplate;
+    private SubmittableValidationDispatcher submittableValidationDispatcher;
+
+    @Before
+    public void setUp() {
+        rabbitMessagingTemplate = mock(RabbitMessagingTemplate.class);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.getMessageConverter()).thenReturn(new Jackson2JsonMessageConverter());
+
+        submittableValidationDispatcher = new SubmittableValidationDispatcher(rabbitMessagingTemplate);
+    }
+
+    @Test
+    public void without_a_batch_publisher_each_submittable_is_sent_on_its_own() {
+        submittableValidationDispatcher.validateBatch(samples(3));
+
+        verify(rabbitMessagingTemplate, times(3)).convertAndSend(
+                eq(Exchanges.SUBMISSIONS), eq(SAMPLE_UPDATED), any(ValidationEnvelopeToCoordinator.class));
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class));
+    }
+
+    @Test
+    public void with_a_batch_publisher_all_envelopes_are_sent_in_batches_before_returning() {
+        ValidationDispatchConfig validationDispatchConfig = new ValidationDispatchConfig();
+        validationDispatchConfig.setBatchSize(2);
+        submittableValidationDispatcher.setValidationBatchPublisher(
+                new ValidationBatchPublisher(rabbitTemplate, validationDispatchConfig));
+
+        submittableValidationDispatcher.validateBatch(samples(4));
+
+        ArgumentCaptor<Message> batches = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(2)).send(eq(Exchanges.SUBMISSIONS), eq(SAMPLE_UPDATED), batches.capture());
+        verify(rabbitMessagingTemplate, never()).convertAndSend(anyString(), anyString(), any(Object.class));
+
+        List<Message> sentBatches = batches.getAllValues();
+        assertEquals(2, envelopesIn(sentBatches.get(0)));
+        assertEquals(2, envelopesIn(sentBatches.get(1)));
+    }
+
+    /**
+     * Counts the envelopes of a batch message, which are each preceded by their length.
+     */
+    private static int envelopesIn(Message batch) {
+        assertEquals(MessageProperties.BATCH_FORMAT_LENGTH_HEADER4,
+                batch.getMessageProperties().getHeaders().get(MessageProperties.SPRING_BATCH_FORMAT));
+
+        ByteBuffer body = ByteBuffer.wrap(batch.getBody());
+        int envelopes = 0;
+        while (body.hasRemaining()) {
+            int envelopeLength = body.getInt();
+            body.position(body.position() + envelopeLength);
+            envelopes++;
+        }
+        return envelopes;
+    }
+
+    private static List<Sample> samples(int count) {
+        Submission submission = new Submission();
+        submission.setId("submission1");
+
+        Sample[] samples = new Sample[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = new Sample();
+            samples[i].setAlias("s" + i);
+            samples[i].setSubmission(submission);
+        }
+        return Arrays.asList(samples);
+    }
+}
@@ -0,0 +1,89 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.ValidationException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.subs.repository.model.Checklist;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ChecklistSchemaCacheTest {
+
+    private static final String SCHEMA = "{\"type\":\"object\",\"required\":[\"alias\",\"taxonId\"]," +
+            "\"properties\":{\"taxonId\":{\"type\":\"integer\"}}}";
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+    private ChecklistSchemaCache checklistSchemaCache;
+    private Checklist checklist;
+
+    @Before
+    public void setUp() throws IOException {
+        checklistSchemaCache = new ChecklistSchemaCache(new SheetLoaderConfig());
+
+        checklist = new Checklist();
+        checklist.setId("samples-checklist");
+        checklist.setVersion(1L);
+        checklist.setValidationSchema(objectMapper.readTree(SCHEMA));
+    }
+
+    @Test
+    public void schemas_are_cached_per_checklist_version() {
+        Schema schema = checklistSchemaCache.schemaFor(checklist).get();
+
+        assertSame(schema, checklistSchemaCache.schemaFor(checklist).get());
+
+        checklist.setVersion(2L);
+
+        assertNotSame(schema, checklistSchemaCache.schemaFor(checklist).get());
+    }
+
+    @Test
+    public void edited_schemas_of_unversioned_checklists_are_reloaded() throws IOException {
+        checklist.setVersion(null);
+        Schema schema = checklistSchemaCache.schemaFor(checklist).get();
+
+        assertSame(schema, checklistSchemaCache.schemaFor(checklist).get());
+
+        checklist.setValidationSchema(objectMapper.readTree("{\"type\":\"object\",\"required\":[\"alias\"]}"));
+        Schema editedSchema = checklistSchemaCache.schemaFor(checklist).get();
+
+        assertNotSame(schema, editedSchema);
+        editedSchema.validate(new JSONObject("{\"alias\":\"s1\",\"taxonId\":\"lots\"}"));
+    }
+
+    @Test
+    public void schema_reports_the_errors_of_a_document() {
+        Schema schema = checklistSchemaCache.schemaFor(checklist).get();
+
+        schema.validate(new JSONObject("{\"alias\":\"s1\",\"taxonId\":9606}"));
+
+        try {
+            schema.validate(new JSONObject("{\"taxonId\":\"lots\"}"));
+            fail("document without alias passed the schema");
+        } catch (ValidationException e) {
+            assertEquals(2, e.getAllMessages().size());
+        }
+    }
+
+    @Test
+    public void checklists_without_a_usable_schema_have_none() throws IOException {
+        Checklist withoutSchema = new Checklist();
+        withoutSchema.setId("no-schema");
+
+        Checklist brokenSchema = new Checklist();
+        brokenSchema.setId("broken-schema");
+        brokenSchema.setValidationSchema(objectMapper.readTree("{\"type\":42}"));
+
+        assertFalse(checklistSchemaCache.schemaFor(withoutSchema).isPresent());
+        assertFalse(checklistSchemaCache.schemaFor(brokenSchema).isPresent());
+    }
+}
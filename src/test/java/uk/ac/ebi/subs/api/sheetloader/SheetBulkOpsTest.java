@@ -0,0 +1,267 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import uk.ac.ebi.subs.repository.model.DataType;
+import uk.ac.ebi.subs.repository.model.ProcessingStatus;
+import uk.ac.ebi.subs.repository.model.Sample;
+import uk.ac.ebi.subs.repository.model.StoredSubmittable;
+import uk.ac.ebi.subs.repository.model.Submission;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.repos.status.ProcessingStatusRepository;
+import uk.ac.ebi.subs.repository.repos.submittables.SampleRepository;
+import uk.ac.ebi.subs.validator.data.ValidationResult;
+import uk.ac.ebi.subs.validator.repository.ValidationResultRepository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SheetBulkOpsTest {
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulkOperations;
+    private SampleRepository sampleRepository;
+    private SheetLoaderConfig sheetLoaderConfig;
+    private ThreadPoolTaskExecutor sheetLookupExecutor;
+
+    private SheetBulkOps sheetBulkOps;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulkOperations = mock(BulkOperations.class);
+        sampleRepository = mock(SampleRepository.class);
+        sheetLoaderConfig = new SheetLoaderConfig();
+        sheetLoaderConfig.setBulkWrites(true);
+
+        MappingMongoConverter converter = new MappingMongoConverter(mock(DbRefResolver.class), new MongoMappingContext());
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), any(Class.class))).thenReturn(bulkOperations);
+
+        AuditorAware<String> auditorAware = () -> "usi-user";
+
+        sheetLookupExecutor = new ThreadPoolTaskExecutor();
+        sheetLookupExecutor.setCorePoolSize(2);
+        sheetLookupExecutor.afterPropertiesSet();
+
+        sheetBulkOps = new SheetBulkOps(
+                mock(ValidationResultRepository.class),
+                mock(ProcessingStatusRepository.class),
+                mock(ApplicationEventPublisher.class),
+                mongoTemplate,
+                sheetLoaderConfig,
+                auditorAware,
+                sheetLookupExecutor
+        );
+    }
+
+    @After
+    public void tearDown() {
+        sheetLookupExecutor.shutdown();
+    }
+
+    @Test
+    public void lookup_existing_entries_in_projected_alias_chunks() {
+        sheetLoaderConfig.setLookupChunkSize(2);
+
+        Date createdDate = new Date();
+        DBCollection collection = mock(DBCollection.class);
+        when(mongoTemplate.getCollectionName(Sample.class)).thenReturn("sample");
+        when(mongoTemplate.getCollection("sample")).thenReturn(collection);
+        when(collection.find(any(DBObject.class), any(DBObject.class))).thenAnswer(invocation -> {
+            DBObject query = (DBObject) invocation.getArguments()[0];
+            List<?> aliases = (List<?>) ((DBObject) query.get("alias")).get("$in");
+
+            DBCursor cursor = mock(DBCursor.class);
+            when(cursor.toArray()).thenReturn(aliases.stream()
+                    .filter(alias -> !"s3".equals(alias))
+                    .map(alias -> new BasicDBObject("_id", alias + "-id")
+                            .append("alias", alias)
+                            .append("version", 2L)
+                            .append("createdBy", "someone")
+                            .append("createdDate", createdDate))
+                    .collect(Collectors.toList()));
+            return cursor;
+        });
+
+        Sample s1 = sample("s1");
+        Sample s2 = sample("s2");
+        Sample s3 = sample("s3");
+        Collection<Pair<Row, ? extends StoredSubmittable>> submittables = Arrays.asList(
+                Pair.of(new Row(), s1),
+                Pair.of(new Row(), s2),
+                Pair.of(new Row(), s3)
+        );
+        Submission submission = new Submission();
+        submission.setId("sub1");
+
+        sheetBulkOps.lookupExistingEntries(submission, submittables, sampleRepository);
+
+        ArgumentCaptor<DBObject> projection = ArgumentCaptor.forClass(DBObject.class);
+        verify(collection, times(2)).find(any(DBObject.class), projection.capture());
+        verify(sampleRepository, never()).findBySubmissionIdAndAliasIn(anyString(), anyCollection());
+
+        assertEquals(
+                new HashSet<>(Arrays.asList("alias", "version", "createdBy", "createdDate", "processingStatus", "validationResult")),
+                projection.getValue().keySet()
+        );
+
+        assertEquals("s1-id", s1.getId());
+        assertEquals(Long.valueOf(2L), s1.getVersion());
+        assertEquals("someone", s1.getCreatedBy());
+        assertEquals(createdDate, s1.getCreatedDate());
+        assertEquals("s2-id", s2.getId());
+        assertNull(s3.getId());
+    }
+
+    @Test
+    public void bulk_update_reports_failed_rows_and_keeps_the_rest() {
+        Row storedRow = new Row(new String[]{"s1"});
+        Row conflictingRow = new Row(new String[]{"s2"});
+        // rows that convert without errors are already marked processed
+        conflictingRow.setProcessed(true);
+        Collection<Pair<Row, ? extends StoredSubmittable>> existingSubmittables = Arrays.asList(
+                Pair.of(storedRow, storedSample("s1")),
+                Pair.of(conflictingRow, storedSample("s2"))
+        );
+
+        BulkOperationException bulkOperationException = mock(BulkOperationException.class);
+        when(bulkOperationException.getErrors()).thenReturn(Collections.singletonList(
+                new BulkWriteError(11000, "E11000 duplicate key error", new BasicDBObject(), 1)
+        ));
+        when(bulkOperations.execute()).thenThrow(bulkOperationException);
+
+        sheetBulkOps.updateExistingSubmittables(existingSubmittables, sampleRepository);
+
+        verify(bulkOperations, times(2)).upsert(any(Query.class), any(Update.class));
+        verify(sampleRepository, never()).save(anyCollection());
+
+        assertTrue(storedRow.isProcessed());
+        assertFalse(storedRow.hasErrors());
+
+        assertFalse(conflictingRow.isProcessed());
+        assertEquals(
+                Collections.singletonList("Could not store row, it was changed by another upload"),
+                conflictingRow.getErrors()
+        );
+    }
+
+    @Test
+    public void bulk_insert_removes_the_companion_documents_of_failed_submittables() {
+        Row storedRow = new Row(new String[]{"s1"});
+        Row conflictingRow = new Row(new String[]{"s2"});
+        Sample storedSample = freshSample("s1");
+        Sample conflictingSample = freshSample("s2");
+        Collection<Pair<Row, ? extends StoredSubmittable>> freshSubmittables = Arrays.asList(
+                Pair.of(storedRow, storedSample),
+                Pair.of(conflictingRow, conflictingSample)
+        );
+
+        BulkOperationException bulkOperationException = mock(BulkOperationException.class);
+        when(bulkOperationException.getErrors()).thenReturn(Collections.singletonList(
+                new BulkWriteError(11000, "E11000 duplicate key error", new BasicDBObject(), 1)
+        ));
+        // the validation results and processing statuses are written, the second submittable is not
+        when(bulkOperations.execute()).thenReturn(null, null).thenThrow(bulkOperationException);
+
+        DBCollection collection = mock(DBCollection.class);
+        DBCursor cursor = mock(DBCursor.class);
+        when(mongoTemplate.getCollectionName(Sample.class)).thenReturn("sample");
+        when(mongoTemplate.getCollection("sample")).thenReturn(collection);
+        when(collection.find(any(DBObject.class), any(DBObject.class))).thenReturn(cursor);
+        when(cursor.toArray()).thenReturn(Collections.emptyList());
+
+        sheetBulkOps.insertNewSubmittables(freshSubmittables, sampleRepository);
+
+        ArgumentCaptor<Query> removedValidationResults = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removedValidationResults.capture(), eq(ValidationResult.class));
+        verify(mongoTemplate).remove(any(Query.class), eq(ProcessingStatus.class));
+
+        String removedIds = removedValidationResults.getValue().getQueryObject().toString();
+        assertTrue(removedIds.contains(conflictingSample.getValidationResult().getUuid()));
+        assertFalse(removedIds.contains(storedSample.getValidationResult().getUuid()));
+
+        assertTrue(storedRow.isProcessed());
+        assertFalse(conflictingRow.isProcessed());
+    }
+
+    @Test
+    public void repository_save_without_bulk_writes() {
+        sheetLoaderConfig.setBulkWrites(false);
+
+        Row row = new Row(new String[]{"s1"});
+        Collection<Pair<Row, ? extends StoredSubmittable>> existingSubmittables =
+                Collections.singletonList(Pair.of(row, storedSample("s1")));
+
+        sheetBulkOps.updateExistingSubmittables(existingSubmittables, sampleRepository);
+
+        verify(sampleRepository).save(anyCollection());
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), any(Class.class));
+        assertTrue(row.isProcessed());
+    }
+
+    private static Sample sample(String alias) {
+        Sample sample = new Sample();
+        sample.setAlias(alias);
+        return sample;
+    }
+
+    private static Sample freshSample(String alias) {
+        Submission submission = new Submission();
+        submission.setId("submission1");
+
+        DataType dataType = new DataType();
+        dataType.setId("samples");
+
+        Sample sample = sample(alias);
+        sample.setSubmission(submission);
+        sample.setDataType(dataType);
+        return sample;
+    }
+
+    private static Sample storedSample(String alias) {
+        Sample sample = sample(alias);
+        sample.setId(alias + "-id");
+        sample.setVersion(3L);
+        return sample;
+    }
+}
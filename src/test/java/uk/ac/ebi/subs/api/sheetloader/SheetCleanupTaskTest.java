@@ -0,0 +1,88 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+import uk.ac.ebi.subs.repository.repos.SpreadsheetRepository;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SheetCleanupTaskTest {
+
+    private IndexOperations indexOperations;
+    private SpreadsheetRepository spreadsheetRepository;
+    private SheetLoaderConfig sheetLoaderConfig = new SheetLoaderConfig();
+    private SheetCleanupTask sheetCleanupTask;
+
+    @Before
+    public void setUp() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        indexOperations = mock(IndexOperations.class);
+        when(mongoTemplate.indexOps(Spreadsheet.class)).thenReturn(indexOperations);
+
+        spreadsheetRepository = mock(SpreadsheetRepository.class);
+
+        sheetCleanupTask = new SheetCleanupTask(mongoTemplate, spreadsheetRepository, mock(SheetRowStore.class),
+                mock(SheetLoadProgressService.class), mock(SheetRowHashService.class), sheetLoaderConfig);
+    }
+
+    @Test
+    public void completed_sheets_expire_after_the_retention_period() {
+        sheetLoaderConfig.setCompletedSheetRetentionDays(3);
+
+        sheetCleanupTask.ensureCompletedSheetExpiry();
+
+        ArgumentCaptor<IndexDefinition> index = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOperations).ensureIndex(index.capture());
+
+        DBObject options = index.getValue().getIndexOptions();
+        assertEquals(new BasicDBObject("lastModifiedDate", 1), index.getValue().getIndexKeys());
+        assertEquals(SheetCleanupTask.COMPLETED_SHEET_EXPIRY_INDEX, options.get("name"));
+        assertEquals(3L * 24 * 60 * 60, options.get("expireAfterSeconds"));
+        assertEquals(new BasicDBObject("status", "Completed"), options.get("partialFilterExpression"));
+    }
+
+    @Test
+    public void a_conflicting_index_is_recreated() {
+        doThrow(new UncategorizedMongoDbException("IndexOptionsConflict", null))
+                .doNothing()
+                .when(indexOperations).ensureIndex(any(Index.class));
+
+        sheetCleanupTask.ensureCompletedSheetExpiry();
+        sheetCleanupTask.cleanUpOldSubmittableBatches();
+
+        verify(indexOperations).dropIndex(SheetCleanupTask.COMPLETED_SHEET_EXPIRY_INDEX);
+        verify(indexOperations, times(2)).ensureIndex(any(Index.class));
+        verify(spreadsheetRepository, never()).removeByLastModifiedDateBeforeAndStatus(any(Date.class), anyString());
+    }
+
+    @Test
+    public void completed_sheets_are_swept_without_the_index() {
+        doThrow(new UncategorizedMongoDbException("not authorized", null))
+                .when(indexOperations).ensureIndex(any(Index.class));
+
+        sheetCleanupTask.ensureCompletedSheetExpiry();
+        sheetCleanupTask.cleanUpOldSubmittableBatches();
+
+        verify(spreadsheetRepository).removeByLastModifiedDateBeforeAndStatus(any(Date.class), eq("Completed"));
+    }
+}
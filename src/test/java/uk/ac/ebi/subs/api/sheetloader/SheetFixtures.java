@@ -0,0 +1,124 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.templates.AttributeCapture;
+import uk.ac.ebi.subs.repository.model.templates.FieldCapture;
+import uk.ac.ebi.subs.repository.model.templates.JsonFieldType;
+import uk.ac.ebi.subs.repository.model.templates.Template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sample templates and generated sheet rows of any size, shared by the sheet loader performance test and the JMH
+ * benchmarks. Rows are generated from a fixed seed, so every run works on the same cells.
+ */
+public final class SheetFixtures {
+
+    public static final String TAXON_ID_HEADER = "taxon id";
+    public static final String UNITS_HEADER = "units";
+
+    private static final long SEED = 42L;
+
+    private SheetFixtures() {
+    }
+
+    /**
+     * A sample template with field captures for the alias, title, description, taxon and taxon ID columns, and an
+     * attribute capture for any other column.
+     */
+    public static Template sampleTemplate() {
+        Template template = new Template();
+
+        template
+                .add(
+                        "unique name",
+                        FieldCapture.builder().fieldName("alias").build()
+                )
+                .add("title",
+                        FieldCapture.builder().fieldName("title").build()
+                )
+                .add(
+                        "description",
+                        FieldCapture.builder().fieldName("description").build()
+                )
+                .add("taxon",
+                        FieldCapture.builder().fieldName("taxon").build()
+                )
+                .add(TAXON_ID_HEADER,
+                        FieldCapture.builder().fieldName("taxonId").fieldType(JsonFieldType.IntegerNumber).build()
+                );
+
+        template.setDefaultCapture(
+                AttributeCapture.builder().build()
+        );
+
+        return template;
+    }
+
+    /**
+     * The headers of the template columns, followed by attribute columns picked up by the default capture.
+     *
+     * @param attributeColumns number of attribute columns
+     * @param attributeUnits   whether each attribute column is followed by a units column
+     */
+    public static List<String> headers(Template template, int attributeColumns, boolean attributeUnits) {
+        List<String> headers = new ArrayList<>(template.getColumnCaptures().keySet());
+
+        for (int i = 0; i < attributeColumns; i++) {
+            headers.add("attribute " + i);
+            if (attributeUnits) {
+                headers.add(UNITS_HEADER);
+            }
+        }
+
+        return headers;
+    }
+
+    /**
+     * Rows for the headers, with a unique alias in the first column, numbers for the taxon ID and attribute columns,
+     * and random text elsewhere.
+     */
+    public static List<Row> rows(List<String> headers, int rowCount) {
+        Random random = new Random(SEED);
+        List<Row> rows = new ArrayList<>(rowCount);
+
+        for (int rowIndex = 0; rowIndex < rowCount; rowIndex++) {
+            List<String> cells = new ArrayList<>(headers.size());
+            cells.add("sample-" + rowIndex);
+
+            for (int column = 1; column < headers.size(); column++) {
+                String header = headers.get(column);
+
+                if (TAXON_ID_HEADER.equals(header)) {
+                    cells.add(Integer.toString(1000 + random.nextInt(9001)));
+                } else if (UNITS_HEADER.equals(header)) {
+                    cells.add("meters");
+                } else if (header.startsWith("attribute ")) {
+                    cells.add(Double.toString(random.nextInt(100000) / 100.0));
+                } else {
+                    cells.add(Long.toString(random.nextLong(), Character.MAX_RADIX));
+                }
+            }
+
+            rows.add(new Row(cells));
+        }
+
+        return rows;
+    }
+
+    /**
+     * The header and rows as a CSV file, as a submitter would upload it.
+     */
+    public static String csv(List<String> headers, List<Row> rows) {
+        StringBuilder csv = new StringBuilder();
+
+        csv.append(String.join(",", headers)).append('\n');
+        for (Row row : rows) {
+            csv.append(String.join(",", row.getCells())).append('\n');
+        }
+
+        return csv.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.mongodb.WriteResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SheetLoadProgressServiceTest {
+
+    private MongoTemplate mongoTemplate;
+    private SheetLoadProgressService sheetLoadProgressService;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        sheetLoadProgressService = new SheetLoadProgressService(mongoTemplate, new SheetLoaderConfig());
+    }
+
+    @Test
+    public void sharded_load_starts_once() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setId("sheet1");
+
+        assertTrue(sheetLoadProgressService.startShardedLoad(sheet, 100, 2));
+
+        when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(SheetLoadProgress.class)))
+                .thenThrow(new DuplicateKeyException("sheet1 already has shards"));
+
+        assertFalse(sheetLoadProgressService.startShardedLoad(sheet, 100, 2));
+    }
+
+    @Test
+    public void shard_chunk_is_not_recorded_without_the_lease() {
+        SheetLoadShard shard = new SheetLoadShard("sheet1", 0, 10, 0, 2);
+
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(SheetLoadProgress.class)))
+                .thenReturn(new WriteResult(0, true, null));
+
+        assertFalse(sheetLoadProgressService.recordShardChunk(shard, "attempt", 10, 10, 10, 0, 0));
+
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(SheetLoadProgress.class)))
+                .thenReturn(new WriteResult(1, true, null));
+
+        assertTrue(sheetLoadProgressService.recordShardChunk(shard, "attempt", 10, 10, 10, 0, 0));
+    }
+
+    @Test
+    public void progress_is_removed_with_its_sheet() {
+        SheetLoadProgress expired = new SheetLoadProgress();
+        expired.setSheetId("expired");
+        SheetLoadProgress current = new SheetLoadProgress();
+        current.setSheetId("current");
+
+        when(mongoTemplate.find(any(Query.class), eq(SheetLoadProgress.class))).thenReturn(Arrays.asList(expired, current));
+        when(mongoTemplate.exists(any(Query.class), eq(Spreadsheet.class))).thenReturn(false, true);
+
+        sheetLoadProgressService.removeProgressOfDeletedSheets();
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(SheetLoadProgress.class));
+        assertEquals("expired", removed.getValue().getQueryObject().get("_id"));
+    }
+}
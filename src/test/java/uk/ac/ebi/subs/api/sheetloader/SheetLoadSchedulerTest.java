@@ -0,0 +1,149 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SheetLoadSchedulerTest {
+
+    private SheetLoaderConfig sheetLoaderConfig;
+    private MeterRegistry meterRegistry;
+    private ThreadPoolTaskExecutor sheetLoadExecutor;
+    private SheetLoadScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        sheetLoaderConfig = new SheetLoaderConfig();
+        sheetLoaderConfig.setMaxConcurrentLoads(1);
+        sheetLoaderConfig.setMaxConcurrentLoadsPerTeam(1);
+        meterRegistry = new SimpleMeterRegistry();
+
+        sheetLoadExecutor = new ThreadPoolTaskExecutor();
+        sheetLoadExecutor.setCorePoolSize(4);
+        sheetLoadExecutor.initialize();
+
+        scheduler = new SheetLoadScheduler(sheetLoaderConfig, meterRegistry, sheetLoadExecutor);
+        scheduler.registerGauges();
+    }
+
+    @After
+    public void tearDown() {
+        sheetLoadExecutor.shutdown();
+    }
+
+    @Test
+    public void submit_does_not_wait_for_the_load_to_run() throws Exception {
+        CountDownLatch releaseFirstLoad = new CountDownLatch(1);
+        CountDownLatch allDone = new CountDownLatch(3);
+        List<String> admissionOrder = new CopyOnWriteArrayList<>();
+
+        submit("team", admissionOrder, releaseFirstLoad, allDone);
+        submit("team", admissionOrder, null, allDone);
+        submit("other-team", admissionOrder, null, allDone);
+
+        assertEquals(1, scheduler.runningLoadCount());
+        assertEquals(2, scheduler.queuedLoadCount());
+        assertEquals(2.0, meterRegistry.get(SheetLoadScheduler.QUEUED_LOADS_GAUGE).gauge().value(), 0);
+
+        releaseFirstLoad.countDown();
+        assertTrue(allDone.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void next_slot_goes_to_the_team_with_fewest_running_loads() throws Exception {
+        sheetLoaderConfig.setMaxConcurrentLoads(2);
+        sheetLoaderConfig.setMaxConcurrentLoadsPerTeam(2);
+
+        List<String> admissionOrder = new CopyOnWriteArrayList<>();
+        CountDownLatch releaseFirstLoad = new CountDownLatch(1);
+        CountDownLatch releaseSecondLoad = new CountDownLatch(1);
+        CountDownLatch allDone = new CountDownLatch(5);
+
+        submit("big-team", admissionOrder, releaseFirstLoad, allDone);
+        submit("big-team", admissionOrder, releaseSecondLoad, allDone);
+        submit("big-team", admissionOrder, null, allDone);
+        submit("big-team", admissionOrder, null, allDone);
+        submit("small-team", admissionOrder, null, allDone);
+
+        assertEquals(2, scheduler.runningLoadCount());
+        assertEquals(3, scheduler.queuedLoadCount());
+        awaitAdmitted(admissionOrder, 2);
+
+        releaseFirstLoad.countDown();
+        awaitAdmitted(admissionOrder, 3);
+        assertEquals("small-team", admissionOrder.get(2));
+
+        releaseSecondLoad.countDown();
+        assertTrue(allDone.await(5, TimeUnit.SECONDS));
+
+        assertEquals(5, meterRegistry.get(SheetLoadScheduler.QUEUE_WAIT_TIMER).timer().count());
+    }
+
+    @Test
+    public void team_limit_holds_back_loads_even_with_free_slots() throws Exception {
+        sheetLoaderConfig.setMaxConcurrentLoads(3);
+
+        CountDownLatch releaseFirstLoad = new CountDownLatch(1);
+        CountDownLatch allDone = new CountDownLatch(2);
+        List<String> admissionOrder = new CopyOnWriteArrayList<>();
+
+        submit("team", admissionOrder, releaseFirstLoad, allDone);
+        submit("team", admissionOrder, null, allDone);
+
+        assertEquals(1, scheduler.runningLoadCount());
+        assertEquals(1, scheduler.queuedLoadCount());
+
+        releaseFirstLoad.countDown();
+        assertTrue(allDone.await(5, TimeUnit.SECONDS));
+        awaitRunning(0);
+    }
+
+    @Test
+    public void failed_load_frees_its_slot() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+
+        scheduler.submit("team", null, () -> {
+            throw new IllegalStateException("load failed");
+        });
+        scheduler.submit("team", null, done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private void submit(String team, List<String> admissionOrder, CountDownLatch holdUntil, CountDownLatch done) {
+        scheduler.submit(team, null, () -> {
+            admissionOrder.add(team);
+            if (holdUntil != null) {
+                try {
+                    holdUntil.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            done.countDown();
+        });
+    }
+
+    private void awaitAdmitted(List<String> admissionOrder, int count) throws InterruptedException {
+        while (admissionOrder.size() < count) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitRunning(int count) throws InterruptedException {
+        while (scheduler.runningLoadCount() != count) {
+            Thread.sleep(5);
+        }
+    }
+}
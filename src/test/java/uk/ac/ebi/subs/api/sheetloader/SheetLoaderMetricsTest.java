@@ -0,0 +1,89 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.util.StopWatch;
+import uk.ac.ebi.subs.api.config.MeterRegistryPublicMetrics;
+import uk.ac.ebi.subs.repository.model.Checklist;
+import uk.ac.ebi.subs.repository.model.DataType;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SheetLoaderMetricsTest {
+
+    private static final Tags TAGS = Tags.of("dataType", "samples", "checklist", "sample-checklist");
+
+    private SimpleMeterRegistry meterRegistry;
+    private SheetLoaderMetrics sheetLoaderMetrics;
+    private SheetLoadContext context;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sheetLoaderMetrics = new SheetLoaderMetrics(meterRegistry);
+
+        DataType dataType = new DataType();
+        dataType.setId("samples");
+        Checklist checklist = new Checklist();
+        checklist.setId("sample-checklist");
+
+        context = SheetLoadContext.builder()
+                .dataType(dataType)
+                .checklist(checklist)
+                .build();
+    }
+
+    @Test
+    public void stages_are_timed_per_data_type_and_checklist() {
+        StopWatch stopWatch = new StopWatch();
+        for (String stage : new String[]{"convert", "lookup", "convert"}) {
+            stopWatch.start(stage);
+            stopWatch.stop();
+        }
+
+        sheetLoaderMetrics.recordStages(context, stopWatch);
+
+        Timer convert = meterRegistry.get(SheetLoaderMetrics.STAGE_TIMER).tags(TAGS).tag("stage", "convert").timer();
+        Timer lookup = meterRegistry.get(SheetLoaderMetrics.STAGE_TIMER).tags(TAGS).tag("stage", "lookup").timer();
+
+        assertEquals(2, convert.count());
+        assertEquals(1, lookup.count());
+        assertTrue(convert.totalTime(TimeUnit.MILLISECONDS) >= 0);
+    }
+
+    @Test
+    public void chunk_counts_add_up() {
+        sheetLoaderMetrics.recordChunk(context, 100, 3, 7, 60, 30);
+        sheetLoaderMetrics.recordChunk(context, 50, 0, 0, 50, 0);
+
+        assertEquals(150, count(SheetLoaderMetrics.ROWS_COUNTER), 0);
+        assertEquals(3, count(SheetLoaderMetrics.FAILED_ROWS_COUNTER), 0);
+        assertEquals(7, count(SheetLoaderMetrics.SKIPPED_ROWS_COUNTER), 0);
+        assertEquals(110, count(SheetLoaderMetrics.INSERTS_COUNTER), 0);
+        assertEquals(30, count(SheetLoaderMetrics.UPDATES_COUNTER), 0);
+    }
+
+    @Test
+    public void meters_are_listed_on_the_metrics_endpoint() {
+        sheetLoaderMetrics.recordChunk(context, 100, 3, 7, 60, 30);
+
+        Map<String, Number> metrics = new MeterRegistryPublicMetrics(meterRegistry).metrics().stream()
+                .collect(Collectors.toMap(Metric::getName, metric -> metric.getValue()));
+
+        assertEquals(100.0, metrics.get("sheet.loader.rows.checklist.sample-checklist.dataType.samples.count"));
+        assertEquals(60.0, metrics.get("sheet.loader.inserts.checklist.sample-checklist.dataType.samples.count"));
+    }
+
+    private double count(String counterName) {
+        return meterRegistry.get(counterName).tags(TAGS).counter().count();
+    }
+}
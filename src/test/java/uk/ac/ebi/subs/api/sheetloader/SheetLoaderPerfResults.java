@@ -0,0 +1,106 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reads, writes and compares the results of the {@link SheetLoaderPerfTest} runs.
+ *
+ * A baseline is a results file of an earlier run, on the same kind of machine. A result regresses when its
+ * throughput has dropped, or its peak heap or number of Mongo operations has grown, by more than the allowed
+ * fraction of the baseline.
+ */
+public final class SheetLoaderPerfResults {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private SheetLoaderPerfResults() {
+    }
+
+    public static void write(File file, List<Result> results) throws IOException {
+        file.getParentFile().mkdirs();
+        objectMapper.writeValue(file, results);
+    }
+
+    /**
+     * @return the results of the file by scenario, empty if there is no such file
+     */
+    public static Map<String, Result> read(File file) throws IOException {
+        if (!file.exists()) {
+            return new LinkedHashMap<>();
+        }
+
+        List<Result> results = objectMapper.readValue(file, new TypeReference<List<Result>>() {
+        });
+
+        return results.stream().collect(Collectors.toMap(
+                Result::getScenario, Function.identity(), (first, second) -> second, LinkedHashMap::new));
+    }
+
+    /**
+     * @param maxRegression the allowed change against the baseline, as a fraction of the baseline
+     * @return a description of each measure that regressed, empty if none did
+     */
+    public static List<String> regressions(Result result, Result baseline, double maxRegression) {
+        List<String> regressions = new ArrayList<>();
+
+        if (result.getRowsPerSecond() < baseline.getRowsPerSecond() * (1 - maxRegression)) {
+            regressions.add(String.format("%s: throughput dropped from %.0f to %.0f rows per second",
+                    result.getScenario(), baseline.getRowsPerSecond(), result.getRowsPerSecond()));
+        }
+        if (result.getPeakHeapBytes() > baseline.getPeakHeapBytes() * (1 + maxRegression)) {
+            regressions.add(String.format("%s: peak heap grew from %d to %d bytes",
+                    result.getScenario(), baseline.getPeakHeapBytes(), result.getPeakHeapBytes()));
+        }
+        if (result.totalMongoOperations() > baseline.totalMongoOperations() * (1 + maxRegression)) {
+            regressions.add(String.format("%s: Mongo operations grew from %d to %d",
+                    result.getScenario(), baseline.totalMongoOperations(), result.totalMongoOperations()));
+        }
+
+        return regressions;
+    }
+
+    @Data
+    public static class Result {
+
+        /**
+         * Identifies the measured load across runs, from the row count, template shape and upload.
+         */
+        private String scenario;
+
+        private int rows;
+
+        private String templateShape;
+
+        private String upload;
+
+        private long millis;
+
+        private double rowsPerSecond;
+
+        /**
+         * Highest heap use during the load, summed over the heap memory pools.
+         */
+        private long peakHeapBytes;
+
+        /**
+         * Operations the Mongo server counted during the load, by type, as in the opcounters of its server status.
+         */
+        private Map<String, Long> mongoOperations = new LinkedHashMap<>();
+
+        public long totalMongoOperations() {
+            return mongoOperations.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SheetLoaderPerfResultsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void results_are_read_back_by_scenario() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "perf/results.json");
+
+        SheetLoaderPerfResults.write(file, Arrays.asList(result("1000-fields-fresh", 5000, 100, 30)));
+        Map<String, SheetLoaderPerfResults.Result> read = SheetLoaderPerfResults.read(file);
+
+        assertEquals(result("1000-fields-fresh", 5000, 100, 30), read.get("1000-fields-fresh"));
+        assertTrue(SheetLoaderPerfResults.read(new File(temporaryFolder.getRoot(), "missing.json")).isEmpty());
+    }
+
+    @Test
+    public void changes_within_the_threshold_are_no_regression() {
+        SheetLoaderPerfResults.Result baseline = result("1000-fields-fresh", 5000, 100, 30);
+
+        assertTrue(SheetLoaderPerfResults.regressions(result("1000-fields-fresh", 4000, 120, 36), baseline, 0.25).isEmpty());
+        assertTrue(SheetLoaderPerfResults.regressions(result("1000-fields-fresh", 9000, 50, 10), baseline, 0.25).isEmpty());
+    }
+
+    @Test
+    public void each_measure_beyond_the_threshold_is_a_regression() {
+        SheetLoaderPerfResults.Result baseline = result("1000-fields-fresh", 5000, 100, 30);
+
+        List<String> regressions = SheetLoaderPerfResults.regressions(
+                result("1000-fields-fresh", 3000, 200, 60), baseline, 0.25);
+
+        assertEquals(Arrays.asList(
+                "1000-fields-fresh: throughput dropped from 5000 to 3000 rows per second",
+                "1000-fields-fresh: peak heap grew from 100 to 200 bytes",
+                "1000-fields-fresh: Mongo operations grew from 30 to 60"
+        ), regressions);
+    }
+
+    private static SheetLoaderPerfResults.Result result(String scenario, double rowsPerSecond, long peakHeapBytes,
+                                                       long inserts) {
+        SheetLoaderPerfResults.Result result = new SheetLoaderPerfResults.Result();
+        result.setScenario(scenario);
+        result.setRows(1000);
+        result.setTemplateShape("FIELDS");
+        result.setUpload("fresh");
+        result.setRowsPerSecond(rowsPerSecond);
+        result.setPeakHeapBytes(peakHeapBytes);
+        result.getMongoOperations().put("insert", inserts);
+        return result;
+    }
+}
@@ -1,16 +1,28 @@
 package uk.ac.ebi.subs.api.sheetloader;
 
+import com.mongodb.DBObject;
 import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.security.test.context.support.WithMockUser;
-import org.springframework.test.context.junit4.SpringRunner;
-import org.springframework.util.StopWatch;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
 import uk.ac.ebi.subs.ApiApplication;
 import uk.ac.ebi.subs.RabbitMQDependentTest;
 import uk.ac.ebi.subs.api.ApiIntegrationTestHelper;
@@ -23,9 +35,6 @@ import uk.ac.ebi.subs.repository.model.Submission;
 import uk.ac.ebi.subs.repository.model.SubmissionStatus;
 import uk.ac.ebi.subs.repository.model.sheets.Row;
 import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
-import uk.ac.ebi.subs.repository.model.templates.AttributeCapture;
-import uk.ac.ebi.subs.repository.model.templates.FieldCapture;
-import uk.ac.ebi.subs.repository.model.templates.JsonFieldType;
 import uk.ac.ebi.subs.repository.model.templates.Template;
 import uk.ac.ebi.subs.repository.repos.ChecklistRepository;
 import uk.ac.ebi.subs.repository.repos.DataTypeRepository;
@@ -34,23 +43,61 @@ import uk.ac.ebi.subs.repository.repos.SubmissionRepository;
 import uk.ac.ebi.subs.repository.repos.status.SubmissionStatusRepository;
 import uk.ac.ebi.subs.repository.repos.submittables.SampleRepository;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-@SpringBootTest(classes = ApiApplication.class)
-@RunWith(SpringRunner.class)
+/**
+ * Times sheet loads of several sizes and template shapes against the Mongo of the build. The application still
+ * needs RabbitMQ to start its listeners, but the validation messages of the loads go to a mocked template, so the
+ * broker is not part of the timings. Each load is either a fresh upload, or an upload of the same rows again, which
+ * updates the submittables of the first one.
+ *
+ * Only runs with the {@code sheetLoaderPerf} system property set, as the {@code sheetLoaderPerfTest} Gradle task
+ * does. Row counts can be changed with {@code sheetLoaderPerf.rows}. The results are written to
+ * {@code build/reports/sheet-loader-perf/results.json}, and compared with the baseline results file at
+ * {@code sheetLoaderPerf.baseline}, if there is one. A load fails when it regresses by more than
+ * {@code sheetLoaderPerf.maxRegression} against the baseline.
+ */
+@SpringBootTest(classes = ApiApplication.class, properties = "usi.validation-dispatch.enabled=false")
+@RunWith(Parameterized.class)
 @WithMockUser(username = "usi_admin_user", roles = {Helpers.ADMIN_TEAM_NAME})
 @Category(RabbitMQDependentTest.class)
 public class SheetLoaderPerfTest {
 
+    private static final Logger logger = LoggerFactory.getLogger(SheetLoaderPerfTest.class);
+
+    private static final File RESULTS_FILE = new File("build/reports/sheet-loader-perf/results.json");
+
+    private static final List<SheetLoaderPerfResults.Result> results = new ArrayList<>();
+    private static Map<String, SheetLoaderPerfResults.Result> baseline;
+
+    @ClassRule
+    public static final SpringClassRule springClassRule = new SpringClassRule();
+
+    @Rule
+    public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+    @MockBean
+    private RabbitMessagingTemplate rabbitMessagingTemplate;
+
     @Autowired
     private SheetLoaderService sheetLoaderService;
     @Autowired
+    private SheetRowStore sheetRowStore;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
     private SpreadsheetRepository spreadsheetRepository;
     @Autowired
     private SampleRepository sampleRepository;
@@ -63,15 +110,62 @@ public class SheetLoaderPerfTest {
     @Autowired
     private DataTypeRepository dataTypeRepository;
 
-    private StopWatch stopWatch = new StopWatch();
+    private final int rowCount;
+    private final TemplateShape templateShape;
+    private final boolean reupload;
 
     private Submission submission;
     private Template template;
-    private Spreadsheet sheet;
     private Checklist checklist;
     private DataType dataType;
 
-    private static final int SPREADSHEET_SIZE_IN_ROWS = 3000;
+    enum TemplateShape {
+        FIELDS(0, false),
+        ATTRIBUTES(20, false),
+        ATTRIBUTES_WITH_UNITS(20, true);
+
+        private final int attributeColumns;
+        private final boolean attributeUnits;
+
+        TemplateShape(int attributeColumns, boolean attributeUnits) {
+            this.attributeColumns = attributeColumns;
+            this.attributeUnits = attributeUnits;
+        }
+    }
+
+    @Parameterized.Parameters(name = "{0} rows, {1}, re-upload {2}")
+    public static Collection<Object[]> scenarios() {
+        List<Object[]> scenarios = new ArrayList<>();
+
+        for (String rows : System.getProperty("sheetLoaderPerf.rows", "1000,10000,100000").split(",")) {
+            for (TemplateShape templateShape : TemplateShape.values()) {
+                for (boolean reupload : Arrays.asList(false, true)) {
+                    scenarios.add(new Object[]{Integer.parseInt(rows.trim()), templateShape, reupload});
+                }
+            }
+        }
+
+        return scenarios;
+    }
+
+    public SheetLoaderPerfTest(int rowCount, TemplateShape templateShape, boolean reupload) {
+        this.rowCount = rowCount;
+        this.templateShape = templateShape;
+        this.reupload = reupload;
+    }
+
+    @BeforeClass
+    public static void onlyWhenAskedFor() throws IOException {
+        Assume.assumeTrue("sheet loader performance suite not requested", Boolean.getBoolean("sheetLoaderPerf"));
+
+        File baselineFile = new File(System.getProperty(
+                "sheetLoaderPerf.baseline", "src/test/resources/sheetloader/perf-baseline.json"));
+        baseline = SheetLoaderPerfResults.read(baselineFile);
+
+        if (baseline.isEmpty()) {
+            logger.warn("no baseline results in {}, results are not compared", baselineFile);
+        }
+    }
 
     @Before
     public void init() {
@@ -102,65 +196,96 @@ public class SheetLoaderPerfTest {
         checklist.setDataTypeId(dataType.getId());
 
 
-        template = template();
+        template = SheetFixtures.sampleTemplate();
         checklist.setSpreadsheetTemplate(template);
         checklistRepository.insert(checklist);
-
-        sheet = sheet();
-        spreadsheetRepository.insert(sheet);
     }
 
     @Test
-    public void timedTest() {
-        stopWatch.start();
+    public void timedLoad() throws IOException {
+        if (reupload) {
+            sheetLoaderService.loadSheet(storedSheet());
+        }
+
+        Spreadsheet sheet = storedSheet();
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        Map<String, Long> opCountersBefore = mongoOpCounters();
+        long start = System.nanoTime();
 
         sheetLoaderService.loadSheet(sheet);
 
-        stopWatch.stop();
-        System.out.println(stopWatch.shortSummary());
-    }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        Map<String, Long> opCountersAfter = mongoOpCounters();
+
+        SheetLoaderPerfResults.Result result = new SheetLoaderPerfResults.Result();
+        result.setScenario(rowCount + "-" + templateShape.name().toLowerCase() + "-" + (reupload ? "reupload" : "fresh"));
+        result.setRows(rowCount);
+        result.setTemplateShape(templateShape.name());
+        result.setUpload(reupload ? "reupload" : "fresh");
+        result.setMillis(millis);
+        result.setRowsPerSecond(rowCount * 1000.0 / Math.max(1, millis));
+        result.setPeakHeapBytes(heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum());
+        opCountersAfter.forEach((operation, count) ->
+                result.getMongoOperations().put(operation, count - opCountersBefore.getOrDefault(operation, 0L)));
+
+        logger.info("{}: {} ms, {} rows per second, peak heap {} bytes, Mongo operations {}",
+                result.getScenario(), millis, Math.round(result.getRowsPerSecond()), result.getPeakHeapBytes(),
+                result.getMongoOperations());
+
+        synchronized (results) {
+            results.add(result);
+            SheetLoaderPerfResults.write(RESULTS_FILE, results);
+        }
+
+        SheetLoaderPerfResults.Result baselineResult = baseline.get(result.getScenario());
+        if (baselineResult != null) {
+            double maxRegression = Double.parseDouble(System.getProperty("sheetLoaderPerf.maxRegression", "0.25"));
+            List<String> regressions = SheetLoaderPerfResults.regressions(result, baselineResult, maxRegression);
 
+            Assert.assertTrue(String.join("\n", regressions), regressions.isEmpty());
+        }
+    }
 
-    private Spreadsheet sheet() {
+    private Spreadsheet storedSheet() {
         Spreadsheet sheet = new Spreadsheet();
+        sheet.setId(UUID.randomUUID().toString());
         sheet.setChecklistId(checklist.getId());
         sheet.setDataTypeId(dataType.getId());
         sheet.setTeam(submission.getTeam());
         sheet.setSubmissionId(submission.getId());
-        List<String> headers = template.getColumnCaptures().keySet().stream().collect(Collectors.toList());
+        List<String> headers = SheetFixtures.headers(template, templateShape.attributeColumns, templateShape.attributeUnits);
         sheet.setHeaderRow(new Row(headers));
-        sheet.setRows(createRows());
-        return sheet;
-    }
+        sheet.setRows(SheetFixtures.rows(headers, rowCount));
 
-    private List<Row> createRows() {
-        List<Row> rows = new LinkedList<>();
-        List<JsonFieldType> types = Arrays.asList(
-                JsonFieldType.String, JsonFieldType.String, JsonFieldType.String, JsonFieldType.String,
-                JsonFieldType.IntegerNumber
-        );
-
-        for (int i = 0; i < SPREADSHEET_SIZE_IN_ROWS; i++) {
-            List<String> cells = new LinkedList<>();
-
-
-            for (JsonFieldType type : types) {
-                String value;
+        // very large sheets would not fit in one document, so their rows are stored separately, as on upload
+        if (sheetRowStore.shouldExternaliseRows(sheet)) {
+            sheetRowStore.externaliseRows(sheet);
+        }
 
-                if (type == JsonFieldType.IntegerNumber) {
-                    int num = ThreadLocalRandom.current().nextInt(1000, 10001);
-                    value = "" + num;
-                } else {
-                    value = UUID.randomUUID().toString();
-                }
+        return spreadsheetRepository.insert(sheet);
+    }
 
-                cells.add(value);
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
             }
-            rows.add(new Row(cells));
-
         }
+        return heapPools;
+    }
+
+    private Map<String, Long> mongoOpCounters() {
+        DBObject opCounters = (DBObject) mongoTemplate.executeCommand("{ serverStatus: 1 }").get("opcounters");
 
-        return rows;
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (String operation : opCounters.keySet()) {
+            counts.put(operation, ((Number) opCounters.get(operation)).longValue());
+        }
+        return counts;
     }
 
     @After
@@ -173,35 +298,8 @@ public class SheetLoaderPerfTest {
                 submissionStatusRepository,
                 dataTypeRepository)
                 .forEach(CrudRepository::deleteAll);
-    }
 
-    private Template template() {
-        Template template = new Template();
-
-        template
-                .add(
-                        "unique name",
-                        FieldCapture.builder().fieldName("alias").build()
-                )
-                .add("title",
-                        FieldCapture.builder().fieldName("title").build()
-                )
-                .add(
-                        "description",
-                        FieldCapture.builder().fieldName("description").build()
-                )
-                .add("taxon",
-                        FieldCapture.builder().fieldName("taxon").build()
-                )
-                .add("taxon id",
-                        FieldCapture.builder().fieldName("taxonId").fieldType(JsonFieldType.IntegerNumber).build()
-                );
-
-        template.setDefaultCapture(
-                AttributeCapture.builder().build()
-        );
-
-
-        return template;
+        Stream.of(SheetLoadProgress.class, SheetRowChunk.class, ExternalSheetRows.class, SheetRowHash.class)
+                .forEach(mongoTemplate::dropCollection);
     }
 }
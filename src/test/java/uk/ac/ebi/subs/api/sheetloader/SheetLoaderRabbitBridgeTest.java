@@ -0,0 +1,137 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.sheets.SheetStatusEnum;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+import uk.ac.ebi.subs.repository.repos.SpreadsheetRepository;
+
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SheetLoaderRabbitBridgeTest {
+
+    private static final String SHEET_ID = "sheet1";
+    private static final long DELIVERY_TAG = 42L;
+
+    private SheetLoaderService sheetLoaderService;
+    private SpreadsheetRepository spreadsheetRepository;
+    private SheetShardService sheetShardService;
+    private SheetLoadScheduler sheetLoadScheduler;
+    private SheetLoadProgressService sheetLoadProgressService;
+    private Channel channel;
+
+    private SheetLoaderRabbitBridge bridge;
+
+    private Spreadsheet sheet;
+
+    @Before
+    public void setUp() {
+        sheetLoaderService = mock(SheetLoaderService.class);
+        spreadsheetRepository = mock(SpreadsheetRepository.class);
+        sheetShardService = mock(SheetShardService.class);
+        sheetLoadScheduler = mock(SheetLoadScheduler.class);
+        sheetLoadProgressService = mock(SheetLoadProgressService.class);
+        channel = mock(Channel.class);
+
+        bridge = new SheetLoaderRabbitBridge(
+                sheetLoaderService,
+                spreadsheetRepository,
+                mock(AdminUserService.class),
+                sheetShardService,
+                sheetLoadScheduler,
+                sheetLoadProgressService,
+                mock(SheetUploadStore.class)
+        );
+
+        sheet = new Spreadsheet();
+        sheet.setId(SHEET_ID);
+        sheet.setStatus(SheetStatusEnum.Submitted);
+        sheet.setHeaderRow(new Row(new String[]{"alias"}));
+
+        when(sheetLoadProgressService.findSheetWithoutRows(SHEET_ID)).thenReturn(sheet);
+        when(spreadsheetRepository.findOne(SHEET_ID)).thenReturn(sheet);
+    }
+
+    @Test
+    public void message_is_acknowledged_once_the_load_has_finished() throws IOException {
+        bridge.onSubmissionLoadSheetContents(SHEET_ID, channel, DELIVERY_TAG);
+
+        Runnable load = scheduledLoad();
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        load.run();
+
+        verify(sheetLoaderService).loadSheet(sheet);
+        verify(channel).basicAck(DELIVERY_TAG, false);
+    }
+
+    @Test
+    public void message_of_a_failed_load_is_dead_lettered() throws IOException {
+        doThrow(new IllegalStateException("load failed")).when(sheetLoaderService).loadSheet(sheet);
+
+        bridge.onSubmissionLoadSheetContents(SHEET_ID, channel, DELIVERY_TAG);
+        Runnable load = scheduledLoad();
+
+        try {
+            load.run();
+            fail("the load should have failed");
+        } catch (IllegalStateException e) {
+            // the scheduler logs it
+        }
+
+        verify(sheetLoadProgressService).markFailed(SHEET_ID, "load failed");
+        verify(channel).basicNack(DELIVERY_TAG, false, false);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void message_of_a_completed_sheet_is_acknowledged_without_a_load() throws IOException {
+        sheet.setStatus(SheetStatusEnum.Completed);
+
+        bridge.onSubmissionLoadSheetContents(SHEET_ID, channel, DELIVERY_TAG);
+
+        verify(sheetLoadScheduler, never()).submit(anyString(), any(Date.class), any(Runnable.class));
+        verify(channel).basicAck(DELIVERY_TAG, false);
+    }
+
+    @Test
+    public void message_of_a_failed_shard_load_is_dead_lettered() throws IOException {
+        SheetLoadShard shard = new SheetLoadShard(SHEET_ID, 0, 10, 0, 2);
+        when(sheetShardService.findShardSheet(shard)).thenReturn(sheet);
+        when(sheetLoaderService.loadShard(sheet, shard)).thenThrow(new IllegalStateException("lease lost"));
+
+        bridge.onLoadSheetShard(shard, channel, DELIVERY_TAG);
+        Runnable load = scheduledLoad();
+
+        try {
+            load.run();
+            fail("the shard load should have failed");
+        } catch (IllegalStateException e) {
+            // the scheduler logs it
+        }
+
+        verify(sheetShardService, never()).completeShard(shard);
+        verify(channel).basicNack(DELIVERY_TAG, false, false);
+    }
+
+    private Runnable scheduledLoad() {
+        ArgumentCaptor<Runnable> load = ArgumentCaptor.forClass(Runnable.class);
+        verify(sheetLoadScheduler).submit(any(), any(), load.capture());
+        return load.getValue();
+    }
+}
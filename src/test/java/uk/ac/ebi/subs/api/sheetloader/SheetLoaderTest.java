@@ -2,8 +2,10 @@ package uk.ac.ebi.subs.api.sheetloader;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONArray;
 import org.json.JSONObject;
-import org.junit.Assert;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -37,20 +39,32 @@ import uk.ac.ebi.subs.repository.repos.SubmissionRepository;
 import uk.ac.ebi.subs.repository.repos.submittables.SampleRepository;
 import uk.ac.ebi.subs.repository.repos.submittables.SubmittableRepository;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.hamcrest.Matchers.samePropertyValuesAs;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -78,13 +92,26 @@ public class SheetLoaderTest {
     private ChecklistRepository checklistRepository;
     @MockBean
     private SubmissionRepository submissionRepository;
+    @MockBean
+    private SheetLoadProgressService sheetLoadProgressService;
+    @MockBean
+    private SheetRowStore sheetRowStore;
+    @MockBean
+    private SheetRowHashService sheetRowHashService;
+    @MockBean
+    private SheetReferenceResolver sheetReferenceResolver;
+
+    private SheetLoaderConfig sheetLoaderConfig = new SheetLoaderConfig();
 
     private Submission submission;
     private Checklist checklist;
     private DataType dataType;
 
+    private ForkJoinPool sheetLoaderPool;
+
     @Before
     public void setUp() {
+        sheetLoaderPool = new ForkJoinPool(2);
         objectMapper.registerModule(new JavaTimeModule());
 
         Map<Class<? extends StoredSubmittable>, SubmittableRepository<? extends StoredSubmittable>>
@@ -103,7 +130,16 @@ public class SheetLoaderTest {
                 sheetBulkOps,
                 dataTypeRepository,
                 checklistRepository,
-                submissionRepository
+                submissionRepository,
+                sheetLoaderConfig,
+                sheetLoaderPool,
+                new ColumnMappingPlanCache(sheetLoaderConfig),
+                sheetLoadProgressService,
+                sheetRowStore,
+                sheetRowHashService,
+                sheetReferenceResolver,
+                new ChecklistSchemaCache(sheetLoaderConfig),
+                new SheetLoaderMetrics(new SimpleMeterRegistry())
         );
 
         this.dataType = new DataType();
@@ -138,6 +174,13 @@ public class SheetLoaderTest {
         Mockito.when(dataTypeRepository.findOne(dataType.getId())).thenReturn(dataType);
         Mockito.when(checklistRepository.findOne(checklist.getId())).thenReturn(checklist);
         Mockito.when(submissionRepository.findOne(submission.getId())).thenReturn(submission);
+        Mockito.when(sheetLoadProgressService.startAttempt(sheet, 2)).thenReturn(progress(0, 1));
+        Mockito.when(sheetRowStore.externalRows(sheet.getId())).thenReturn(Optional.empty());
+    }
+
+    @After
+    public void tearDown() {
+        sheetLoaderPool.shutdown();
     }
 
     private Spreadsheet sheet;
@@ -157,6 +200,71 @@ public class SheetLoaderTest {
         assertThat(actualColumnMappings, equalTo(expectedCaptures));
     }
 
+    @Test
+    public void compiling_a_plan_leaves_the_template_untouched() {
+        Template template = checklist.getSpreadsheetTemplate();
+        Template pristineTemplate = template();
+
+        ColumnMappingPlan plan = ColumnMappingPlan.compile(
+                sheet.getHeaderRow().getCells(),
+                template.getColumnCaptures(),
+                Optional.of(template.getDefaultCapture())
+        );
+
+        assertThat(plan.getCaptures(), equalTo(expectedCaptures));
+        assertThat(plan.getDisplayNames().get(4), equalTo("taxon id"));
+        assertThat(template.getColumnCaptures(), equalTo(pristineTemplate.getColumnCaptures()));
+        assertNotSame(template.getColumnCaptures().get("taxon id"), plan.getCaptures().get(4));
+    }
+
+    @Test
+    public void plans_are_cached_per_checklist_and_header_row() {
+        ColumnMappingPlanCache cache = new ColumnMappingPlanCache(sheetLoaderConfig);
+        checklist.setVersion(1L);
+
+        ColumnMappingPlan plan = cache.planFor(checklist, sheet.getHeaderRow());
+        ColumnMappingPlan planForSameHeaders = cache.planFor(
+                checklist, new Row(new ArrayList<>(sheet.getHeaderRow().getCells())));
+        ColumnMappingPlan planForOtherHeaders = cache.planFor(
+                checklist, new Row(new String[]{"unique name", "taxon"}));
+
+        assertSame(plan, planForSameHeaders);
+        assertNotSame(plan, planForOtherHeaders);
+    }
+
+    @Test
+    public void plans_are_recompiled_when_the_checklist_is_edited() {
+        ColumnMappingPlanCache cache = new ColumnMappingPlanCache(sheetLoaderConfig);
+        checklist.setVersion(1L);
+
+        ColumnMappingPlan plan = cache.planFor(checklist, sheet.getHeaderRow());
+
+        checklist.setVersion(2L);
+        ColumnMappingPlan planForEditedChecklist = cache.planFor(checklist, sheet.getHeaderRow());
+
+        checklist.setVersion(null);
+        ColumnMappingPlan planForUnversionedChecklist = cache.planFor(checklist, sheet.getHeaderRow());
+
+        assertNotSame(plan, planForEditedChecklist);
+        assertNotSame(planForUnversionedChecklist, cache.planFor(checklist, sheet.getHeaderRow()));
+    }
+
+    @Test
+    public void number_errors_name_the_column() {
+        Row row = sheet.getRows().get(0);
+        row.getCells().set(4, "lots");
+
+        ColumnMappingPlan plan = ColumnMappingPlan.compile(
+                sheet.getHeaderRow().getCells(),
+                checklist.getSpreadsheetTemplate().getColumnCaptures(),
+                Optional.of(checklist.getSpreadsheetTemplate().getDefaultCapture())
+        );
+
+        sheetLoaderService.rowToDocument(row, plan);
+
+        assertThat(row.getErrors(), equalTo(Arrays.asList("taxon id must be a number")));
+    }
+
     @Test
     public void convert_row_to_document() {
         JSONObject expectedJson = stringToJsonObject(
@@ -223,6 +331,59 @@ public class SheetLoaderTest {
         assertThat(actualSample, samePropertyValuesAs(expectedSample));
     }
 
+    @Test
+    public void bound_document_matches_parsed_document() throws IOException {
+        JSONObject height = new JSONObject();
+        height.put("value", 1.75);
+        height.put("units", "meters");
+
+        JSONObject term = new JSONObject();
+        term.put("url", "http://purl.obolibrary.org/obo/NCBITaxon_9606");
+
+        JSONObject organism = new JSONObject();
+        organism.put("value", "Homo sapiens");
+        organism.put("terms", new JSONArray().put(term));
+
+        JSONObject smoker = new JSONObject();
+        smoker.put("value", false);
+
+        JSONObject age = new JSONObject();
+        age.put("value", 42);
+        age.put("units", JSONObject.NULL);
+
+        JSONObject attributes = new JSONObject();
+        attributes.put("height", new JSONArray().put(height));
+        attributes.put("organism", new JSONArray().put(organism));
+        attributes.put("smoker", new JSONArray().put(smoker));
+        attributes.put("age", new JSONArray().put(age));
+
+        JSONObject json = new JSONObject();
+        json.put("alias", "s1");
+        json.put("taxonId", 9606);
+        json.put("description", JSONObject.NULL);
+        json.put("releaseDate", "2018-10-04");
+        json.put("attributes", attributes);
+
+        Sample expectedSample = objectMapper.readValue(json.toString(), Sample.class);
+        expectedSample.setSubmission(submission);
+        expectedSample.setTeam(submission.getTeam());
+        expectedSample.setChecklist(checklist);
+        expectedSample.setDataType(dataType);
+
+        Sample actualSample = (Sample) sheetLoaderService.documentToSubmittable(
+                Sample.class,
+                submission,
+                new Row(new String[]{"s1"}),
+                json,
+                dataType,
+                checklist
+        );
+
+        assertEquals(objectMapper.valueToTree(expectedSample), objectMapper.valueToTree(actualSample));
+        assertEquals("1.75", actualSample.getAttributes().get("height").iterator().next().getValue());
+        assertEquals("false", actualSample.getAttributes().get("smoker").iterator().next().getValue());
+    }
+
     @Test
     public void convert_sheet_to_submittables() {
         List<Pair<Row, ? extends StoredSubmittable>> expected = new ArrayList<>(submittablesWithPairs());
@@ -236,6 +397,40 @@ public class SheetLoaderTest {
         }
     }
 
+    @Test
+    public void convert_sheet_to_submittables_in_parallel() {
+        sheetLoaderConfig.setParallelConversion(true);
+        sheet.getRows().get(0).getCells().set(4, "not a number");
+
+        List<Pair<Row, ? extends StoredSubmittable>> actual = sheetLoaderService.convertToSubmittables(
+                sheet, Sample.class, checklist.getSpreadsheetTemplate(), submission, dataType, checklist);
+
+        assertEquals(1, actual.size());
+        assertThat(actual.get(0).getFirst(), equalTo(sheet.getRows().get(1)));
+        assertThat(actual.get(0).getSecond(), samePropertyValuesAs(submittablesWithPairs().get(1).getSecond()));
+
+        assertTrue(sheet.getRows().get(0).hasErrors());
+        assertFalse(sheet.getRows().get(1).hasErrors());
+    }
+
+    @Test
+    public void schema_pre_validation_flags_rows_that_break_the_checklist_schema() throws IOException {
+        sheetLoaderConfig.setSchemaPreValidation(true);
+        checklist.setValidationSchema(objectMapper.readTree(
+                "{\"properties\":{\"alias\":{\"type\":\"string\",\"pattern\":\"1$\"}}}"));
+
+        List<Pair<Row, ? extends StoredSubmittable>> actual = sheetLoaderService.convertToSubmittables(
+                sheet, Sample.class, checklist.getSpreadsheetTemplate(), submission, dataType, checklist);
+
+        assertEquals(1, actual.size());
+        assertThat(actual.get(0).getFirst(), equalTo(sheet.getRows().get(0)));
+
+        assertFalse(sheet.getRows().get(0).hasErrors());
+        assertTrue(sheet.getRows().get(0).isProcessed());
+        assertTrue(sheet.getRows().get(1).hasErrors());
+        assertFalse(sheet.getRows().get(1).isProcessed());
+    }
+
     @Test
     public void convert_sheet_to_submittables_without_alias() {
 
@@ -245,10 +440,10 @@ public class SheetLoaderTest {
         List<Pair<Row, ? extends StoredSubmittable>> actual = sheetLoaderService.convertToSubmittables(
                 sheet, Sample.class, checklist.getSpreadsheetTemplate(), submission, dataType, checklist);
 
-        Assert.assertTrue(actual.isEmpty());
+        assertTrue(actual.isEmpty());
 
         for (Row row : sheet.getRows()) {
-            Assert.assertTrue(row.hasErrors());
+            assertTrue(row.hasErrors());
         }
 
 
@@ -288,21 +483,315 @@ public class SheetLoaderTest {
 
         sheetLoaderService.loadSheet(sheet);
 
-        verify(sheetBulkOps).lookupExistingEntries(org.mockito.Matchers.eq(submission),
-                org.mockito.Matchers.anyCollection(),
-                org.mockito.Matchers.eq(sampleRepository));
+        verify(sheetBulkOps).lookupExistingEntries(eq(submission),
+                anyCollection(),
+                eq(sampleRepository));
 
         verify(sheetBulkOps).updateExistingSubmittables(existingSubmittables, sampleRepository);
 
         verify(sheetBulkOps).insertNewSubmittables(freshSubmittables, sampleRepository);
 
-        verify(submittableValidationDispatcher).validateUpdate(submittablesWithPairs.get(0).getSecond());
+        verify(submittableValidationDispatcher).validateBatch(Arrays.asList(
+                submittablesWithPairs.get(0).getSecond(),
+                submittablesWithPairs.get(1).getSecond()
+        ));
+
+        verify(sheetRowStore).writeRows(sheet.getId(), 0, sheet.getRows());
+        verify(spreadsheetRepository, times(1)).save(sheet);
+        verify(sheetLoadProgressService).recordChunk(sheet.getId(), 2, 2, 0, 0);
+        verify(sheetLoadProgressService).markCompleted(sheet.getId());
+        assertEquals(SheetStatusEnum.Completed, sheet.getStatus());
+    }
+
+    @Test
+    public void load_sheet_in_chunks() {
+        sheetLoaderConfig.setChunkSize(1);
+
+        when(sheetBulkOps.lookupExistingEntries(
+                eq(submission),
+                anyCollection(),
+                eq(sampleRepository))
+        ).thenAnswer(invocation -> invocation.getArguments()[1]);
 
-        verify(spreadsheetRepository, times(2)).save(sheet);
+        sheetLoaderService.loadSheet(sheet);
+
+        verify(sheetBulkOps, times(2)).lookupExistingEntries(eq(submission),
+                anyCollection(),
+                eq(sampleRepository));
+        verify(sheetBulkOps, times(2)).insertNewSubmittables(anyCollection(),
+                eq(sampleRepository));
+
+        //each chunk only writes its own rows, the sheet document is saved once with the final status
+        verify(sheetRowStore).writeRows(sheet.getId(), 0, sheet.getRows().subList(0, 1));
+        verify(sheetRowStore).writeRows(sheet.getId(), 1, sheet.getRows().subList(1, 2));
+        verify(spreadsheetRepository, times(1)).save(sheet);
+        verify(sheetLoadProgressService).recordChunk(sheet.getId(), 1, 1, 0, 0);
+        verify(sheetLoadProgressService).recordChunk(sheet.getId(), 2, 1, 0, 0);
         assertEquals(SheetStatusEnum.Completed, sheet.getStatus());
     }
 
 
+    @Test
+    public void loads_above_the_intern_threshold_share_equal_cells() {
+        sheetLoaderConfig.setInternCellsThreshold(1);
+        List<Row> rows = rowsWithEqualTaxaInDistinctStrings();
+
+        when(sheetBulkOps.lookupExistingEntries(
+                eq(submission),
+                anyCollection(),
+                eq(sampleRepository))
+        ).thenAnswer(invocation -> invocation.getArguments()[1]);
+
+        sheetLoaderService.loadSheet(sheet);
+
+        assertSame(rows.get(0).getCells().get(3), rows.get(1).getCells().get(3));
+    }
+
+    @Test
+    public void loads_below_the_intern_threshold_keep_their_cells() {
+        sheetLoaderConfig.setInternCellsThreshold(2);
+        List<Row> rows = rowsWithEqualTaxaInDistinctStrings();
+
+        when(sheetBulkOps.lookupExistingEntries(
+                eq(submission),
+                anyCollection(),
+                eq(sampleRepository))
+        ).thenAnswer(invocation -> invocation.getArguments()[1]);
+
+        sheetLoaderService.loadSheet(sheet);
+
+        assertNotSame(rows.get(0).getCells().get(3), rows.get(1).getCells().get(3));
+    }
+
+    @Test
+    public void completed_sheet_keeps_only_rows_with_errors() {
+        sheetLoaderConfig.setPruneProcessedRows(true);
+        Row rowWithError = sheet.getRows().get(0);
+        rowWithError.getCells().set(4, "not a number");
+
+        when(sheetBulkOps.lookupExistingEntries(
+                eq(submission),
+                anyCollection(),
+                eq(sampleRepository))
+        ).thenAnswer(invocation -> invocation.getArguments()[1]);
+
+        sheetLoaderService.loadSheet(sheet);
+
+        assertEquals(Collections.singletonList(rowWithError), sheet.getRows());
+        assertEquals(SheetStatusEnum.Completed, sheet.getStatus());
+        verify(sheetRowStore, times(0)).pruneProcessedRows(sheet.getId());
+    }
+
+    @Test
+    public void resume_sheet_load_after_last_completed_chunk() {
+        sheetLoaderConfig.setChunkSize(1);
+        when(sheetLoadProgressService.startAttempt(sheet, 2)).thenReturn(progress(1, 2));
+
+        List<Collection<Pair<Row, ? extends StoredSubmittable>>> insertedChunks = new ArrayList<>();
+
+        when(sheetBulkOps.lookupExistingEntries(
+                eq(submission),
+                anyCollection(),
+                eq(sampleRepository))
+        ).thenAnswer(invocation -> invocation.getArguments()[1]);
+
+        Mockito.doAnswer(invocation -> {
+            insertedChunks.add(new ArrayList<>((Collection<Pair<Row, ? extends StoredSubmittable>>) invocation.getArguments()[0]));
+            return null;
+        }).when(sheetBulkOps).insertNewSubmittables(anyCollection(), eq(sampleRepository));
+
+        sheetLoaderService.loadSheet(sheet);
+
+        verify(sheetBulkOps, times(1)).lookupExistingEntries(eq(submission),
+                anyCollection(),
+                eq(sampleRepository));
+        verify(sheetBulkOps).removePartialInserts(anyCollection(),
+                eq(sampleRepository));
+
+        assertEquals(1, insertedChunks.size());
+        Pair<Row, ? extends StoredSubmittable> inserted = insertedChunks.get(0).iterator().next();
+        assertEquals("s2", inserted.getSecond().getAlias());
+        assertEquals(SheetBulkOps.rowSubmittableId(sheet.getId(), 1), inserted.getSecond().getId());
+
+        verify(sheetLoadProgressService).recordChunk(sheet.getId(), 2, 1, 0, 0);
+        assertEquals(SheetStatusEnum.Completed, sheet.getStatus());
+    }
+
+    @Test
+    public void load_sheet_shard() {
+        SheetLoadShard shard = new SheetLoadShard(sheet.getId(), 1, 2, 1, 2);
+        sheet.getRows().remove(0);
+
+        SheetLoadProgress progress = progress(0, 1);
+        progress.getShardAttempts().put("1", 1);
+        when(sheetLoadProgressService.startShardAttempt(
+                eq(shard), anyString())
+        ).thenReturn(progress);
+        when(sheetLoadProgressService.recordShardChunk(
+                eq(shard), anyString(),
+                anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt())
+        ).thenReturn(true);
+
+        when(sheetBulkOps.lookupExistingEntries(
+                eq(submission),
+                anyCollection(),
+                eq(sampleRepository))
+        ).thenAnswer(invocation -> invocation.getArguments()[1]);
+
+        assertTrue(sheetLoaderService.loadShard(sheet, shard));
+
+        verify(sheetBulkOps).insertNewSubmittables(anyCollection(),
+                eq(sampleRepository));
+        verify(sheetRowStore).writeRows(sheet.getId(), 1, sheet.getRows());
+        verify(sheetLoadProgressService).recordShardChunk(
+                eq(shard), anyString(),
+                eq(1), eq(1), eq(1),
+                eq(0), eq(0));
+
+        //the sheet document is shared with the other shards, so it must never be saved as a whole
+        verify(spreadsheetRepository, times(0)).save(sheet);
+    }
+
+    @Test
+    public void shard_leased_by_another_attempt_is_not_loaded() {
+        SheetLoadShard shard = new SheetLoadShard(sheet.getId(), 1, 2, 1, 2);
+        sheet.getRows().remove(0);
+
+        when(sheetLoadProgressService.startShardAttempt(
+                eq(shard), anyString())
+        ).thenReturn(null);
+
+        assertFalse(sheetLoaderService.loadShard(sheet, shard));
+
+        verify(sheetBulkOps, times(0)).insertNewSubmittables(anyCollection(),
+                eq(sampleRepository));
+        verify(sheetBulkOps, times(0)).removePartialInserts(anyCollection(),
+                eq(sampleRepository));
+    }
+
+    @Test
+    public void load_sheet_with_external_rows() {
+        List<Row> rows = new ArrayList<>(sheet.getRows());
+        sheet.setRows(new ArrayList<>());
+
+        ExternalSheetRows externalSheetRows = new ExternalSheetRows();
+        externalSheetRows.setSheetId(sheet.getId());
+        externalSheetRows.setRowCount(rows.size());
+        externalSheetRows.setChunkSize(1);
+
+        sheetLoaderConfig.setChunkSize(1);
+        when(sheetRowStore.externalRows(sheet.getId())).thenReturn(Optional.of(externalSheetRows));
+        when(sheetRowStore.rowCount(sheet)).thenReturn(rows.size());
+        when(sheetRowStore.readRows(sheet.getId(), 0, 1)).thenReturn(rows.subList(0, 1));
+        when(sheetRowStore.readRows(sheet.getId(), 1, 2)).thenReturn(rows.subList(1, 2));
+
+        when(sheetBulkOps.lookupExistingEntries(
+                eq(submission),
+                anyCollection(),
+                eq(sampleRepository))
+        ).thenAnswer(invocation -> invocation.getArguments()[1]);
+
+        sheetLoaderService.loadSheet(sheet);
+
+        verify(sheetBulkOps, times(2)).insertNewSubmittables(anyCollection(),
+                eq(sampleRepository));
+        verify(sheetRowStore).writeRows(sheet.getId(), 0, rows.subList(0, 1));
+        verify(sheetRowStore).writeRows(sheet.getId(), 1, rows.subList(1, 2));
+
+        //only the final status update saves the sheet document
+        verify(spreadsheetRepository, times(1)).save(sheet);
+        assertEquals(SheetStatusEnum.Completed, sheet.getStatus());
+    }
+
+    @Test
+    public void skip_unchanged_rows() {
+        sheetLoaderConfig.setSkipUnchangedRows(true);
+        List<Pair<Row, ? extends StoredSubmittable>> submittablesWithPairs = submittablesWithPairs();
+
+        when(sheetBulkOps.lookupExistingEntries(submission,
+                submittablesWithPairs,
+                sampleRepository)).thenAnswer(invocation -> {
+            submittablesWithPairs.get(0).getSecond().setId("ID");
+            return submittablesWithPairs;
+        });
+
+        StoredSubmittable unchanged = submittablesWithPairs.get(0).getSecond();
+        when(sheetRowHashService.findUnchanged(
+                eq(submittablesWithPairs.subList(0, 1)),
+                anyMap())
+        ).thenReturn(Collections.singleton(unchanged));
+
+        List<Pair<Row, ? extends StoredSubmittable>> freshSubmittables = submittablesWithPairs.subList(1, 2);
+
+        sheetLoaderService.loadSheet(sheet);
+
+        verify(sheetBulkOps).updateExistingSubmittables(Collections.emptyList(), sampleRepository);
+        verify(sheetBulkOps).insertNewSubmittables(freshSubmittables, sampleRepository);
+        verify(sheetRowHashService).saveHashes(eq(freshSubmittables), anyMap());
+        verify(submittableValidationDispatcher).validateBatch(Collections.singletonList(
+                submittablesWithPairs.get(1).getSecond()
+        ));
+
+        assertTrue(submittablesWithPairs.get(0).getFirst().isProcessed());
+        verify(sheetLoadProgressService).recordChunk(sheet.getId(), 2, 1, 0, 1);
+    }
+
+    @Test
+    public void row_hashes_follow_cells_and_headers() {
+        List<String> headers = Arrays.asList("alias", "title");
+        String hash = SheetRowHashService.rowHash("checklist", headers, new Row(new String[]{"s1", "a"}));
+
+        assertEquals(hash, SheetRowHashService.rowHash("checklist", headers, new Row(new String[]{"s1", "a"})));
+        assertNotEquals(hash, SheetRowHashService.rowHash("checklist", headers, new Row(new String[]{"s1", "b"})));
+        assertNotEquals(hash, SheetRowHashService.rowHash("checklist", headers, new Row(new String[]{"s1a", ""})));
+        assertNotEquals(hash, SheetRowHashService.rowHash(
+                "checklist", Arrays.asList("alias", "description"), new Row(new String[]{"s1", "a"})));
+    }
+
+    @Test
+    public void preview_sheet_reports_row_errors_without_storing() {
+        sheet.getRows().get(1).getCells().set(0, "");
+        sheet.getRows().get(1).getCells().set(4, "human");
+
+        SheetPreview preview = sheetLoaderService.previewSheet(sheet, 10);
+
+        assertEquals(2, preview.getTotalRows());
+        assertEquals(2, preview.getPreviewedRows());
+        assertEquals(1, preview.getFailedRows());
+        assertEquals(1, preview.getRowErrors().get(0).getRowIndex());
+        assertEquals(
+                Arrays.asList("taxon id must be a number", "Please provide an alias"),
+                preview.getRowErrors().get(0).getErrors()
+        );
+
+        Mockito.verifyZeroInteractions(sheetBulkOps, submittableValidationDispatcher, sheetLoadProgressService, sheetRowStore);
+        verify(spreadsheetRepository, times(0)).save(sheet);
+    }
+
+    @Test
+    public void preview_sheet_is_limited_to_the_requested_rows() {
+        SheetPreview preview = sheetLoaderService.previewSheet(sheet, 1);
+
+        assertEquals(2, preview.getTotalRows());
+        assertEquals(1, preview.getPreviewedRows());
+        assertEquals(0, preview.getFailedRows());
+    }
+
+    @Test
+    public void row_submittable_ids_are_deterministic() {
+        assertEquals(SheetBulkOps.rowSubmittableId("sheet", 3), SheetBulkOps.rowSubmittableId("sheet", 3));
+        assertNotEquals(SheetBulkOps.rowSubmittableId("sheet", 3), SheetBulkOps.rowSubmittableId("sheet", 4));
+    }
+
+    private SheetLoadProgress progress(int completedRows, int attempts) {
+        SheetLoadProgress progress = new SheetLoadProgress();
+        progress.setSheetId(sheet.getId());
+        progress.setCompletedRows(completedRows);
+        progress.setAttempts(attempts);
+        return progress;
+    }
+
     public void load_one_existing_sample() {
         Sample s = new Sample();
         s.setAlias("test1");
@@ -319,9 +808,23 @@ public class SheetLoaderTest {
     }
 
 
+    /**
+     * @return the rows of the sheet, whose taxon cells are equal but, unlike the literals of the fixture, not the
+     * same string
+     */
+    private List<Row> rowsWithEqualTaxaInDistinctStrings() {
+        List<Row> rows = new ArrayList<>(sheet.getRows());
+        rows.get(1).getCells().set(3, new String("Homo sapiens"));
+
+        assertEquals(rows.get(0).getCells().get(3), rows.get(1).getCells().get(3));
+        assertNotSame(rows.get(0).getCells().get(3), rows.get(1).getCells().get(3));
+        return rows;
+    }
+
     private Spreadsheet sheet(Submission submission, Checklist checklist) {
         Spreadsheet sheet = new Spreadsheet();
 
+        sheet.setId("sheet1");
         sheet.setSubmissionId(submission.getId());
         sheet.setChecklistId(checklist.getId());
         sheet.setDataTypeId(checklist.getDataTypeId());
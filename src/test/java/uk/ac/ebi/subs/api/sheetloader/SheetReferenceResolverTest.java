@@ -0,0 +1,148 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.Pair;
+import uk.ac.ebi.subs.data.component.SampleRelationship;
+import uk.ac.ebi.subs.data.component.Team;
+import uk.ac.ebi.subs.repository.model.Sample;
+import uk.ac.ebi.subs.repository.model.StoredSubmittable;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.repos.submittables.SampleRepository;
+import uk.ac.ebi.subs.repository.repos.submittables.SubmittableRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SheetReferenceResolverTest {
+
+    private static final String TEAM = "subs.team-1";
+
+    private MongoTemplate mongoTemplate;
+    private SheetReferenceResolver sheetReferenceResolver;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+
+        Map<Class<? extends StoredSubmittable>, SubmittableRepository<? extends StoredSubmittable>>
+                submittableRepositoryMap = new HashMap<>();
+        submittableRepositoryMap.put(Sample.class, mock(SampleRepository.class));
+
+        sheetReferenceResolver = new SheetReferenceResolver(submittableRepositoryMap, mongoTemplate);
+    }
+
+    @Test
+    public void unresolved_references_become_row_errors() {
+        when(mongoTemplate.find(any(Query.class), eq(Sample.class)))
+                .thenReturn(Collections.singletonList(sample("stored", "other.team", null)));
+
+        Row resolvedRow = new Row(new String[]{"s1"});
+        Row unresolvedRow = new Row(new String[]{"s2"});
+        unresolvedRow.setProcessed(true);
+        List<Pair<Row, ? extends StoredSubmittable>> submittables = Arrays.asList(
+                Pair.of(resolvedRow, sample("s1", TEAM, relationship("stored", "other.team"))),
+                Pair.of(unresolvedRow, sample("s2", TEAM, relationship("missing", TEAM)))
+        );
+
+        sheetReferenceResolver.resolveReferences(submittables, Sample.class, TEAM, new HashSet<>(Arrays.asList("s1", "s2")));
+
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(Sample.class));
+        assertFalse(resolvedRow.hasErrors());
+        assertEquals(
+                Collections.singletonList("Could not find the referenced sample with alias missing in team " + TEAM),
+                unresolvedRow.getErrors()
+        );
+        assertFalse(unresolvedRow.isProcessed());
+    }
+
+    @Test
+    public void references_to_rows_of_the_sheet_need_no_query() {
+        Row row = new Row(new String[]{"s1"});
+        List<Pair<Row, ? extends StoredSubmittable>> submittables = Collections.singletonList(
+                Pair.of(row, sample("s1", TEAM, relationship("s900", TEAM)))
+        );
+
+        sheetReferenceResolver.resolveReferences(submittables, Sample.class, TEAM, new HashSet<>(Arrays.asList("s1", "s900")));
+        sheetReferenceResolver.resolveReferences(submittables, Sample.class, TEAM, null);
+
+        verify(mongoTemplate, never()).find(any(Query.class), any(Class.class));
+        assertFalse(row.hasErrors());
+    }
+
+    @Test
+    public void references_to_rows_of_the_sheet_are_matched_on_trimmed_aliases() {
+        Row row = new Row(new String[]{"s1"});
+        List<Pair<Row, ? extends StoredSubmittable>> submittables = Collections.singletonList(
+                Pair.of(row, sample("s1", TEAM, relationship(" s900 ", TEAM)))
+        );
+
+        sheetReferenceResolver.resolveReferences(submittables, Sample.class, TEAM, new HashSet<>(Arrays.asList("s1", "s900")));
+
+        verify(mongoTemplate, never()).find(any(Query.class), any(Class.class));
+        assertFalse(row.hasErrors());
+    }
+
+    @Test
+    public void accessioned_references_are_left_to_the_validators() {
+        SampleRelationship accessioned = relationship("s5", "other.team");
+        accessioned.setAccession("SAMEA1234");
+
+        Sample sample = sample("s1", TEAM, accessioned);
+        Row row = new Row(new String[]{"s1"});
+
+        sheetReferenceResolver.resolveReferences(
+                Collections.singletonList(Pair.of(row, sample)), Sample.class, TEAM, Collections.singleton("s1")
+        );
+
+        verify(mongoTemplate, never()).find(any(Query.class), any(Class.class));
+        assertFalse(row.hasErrors());
+    }
+
+    @Test
+    public void rows_with_errors_are_not_checked() {
+        Row row = new Row(new String[]{"s1"});
+        row.getErrors().add("Duplicate alias");
+
+        sheetReferenceResolver.resolveReferences(
+                Collections.singletonList(Pair.of(row, sample("s1", TEAM, relationship("missing", "other.team")))),
+                Sample.class, TEAM, Collections.singleton("s1")
+        );
+
+        verify(mongoTemplate, never()).find(any(Query.class), any(Class.class));
+        assertEquals(Collections.singletonList("Duplicate alias"), row.getErrors());
+    }
+
+    private static Sample sample(String alias, String team, SampleRelationship ref) {
+        Sample sample = new Sample();
+        sample.setAlias(alias);
+        sample.setTeam(Team.build(team));
+        if (ref != null) {
+            sample.getSampleRelationships().add(ref);
+        }
+        return sample;
+    }
+
+    private static SampleRelationship relationship(String alias, String team) {
+        SampleRelationship relationship = new SampleRelationship();
+        relationship.setAlias(alias);
+        relationship.setTeam(team);
+        return relationship;
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.mongodb.DBCollection;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import uk.ac.ebi.subs.repository.model.Submission;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SheetRowHashServiceTest {
+
+    private MongoTemplate mongoTemplate;
+    private SheetRowHashService sheetRowHashService;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        sheetRowHashService = new SheetRowHashService(mongoTemplate);
+    }
+
+    @Test
+    public void hashes_are_removed_with_their_submission() {
+        DBCollection collection = mock(DBCollection.class);
+        when(mongoTemplate.getCollectionName(SheetRowHash.class)).thenReturn("sheetRowHash");
+        when(mongoTemplate.getCollection("sheetRowHash")).thenReturn(collection);
+        when(collection.distinct("submissionId")).thenReturn((List) Arrays.asList("deleted", "current"));
+        when(mongoTemplate.exists(any(Query.class), eq(Submission.class))).thenReturn(false, true);
+
+        sheetRowHashService.removeHashesOfDeletedSubmissions();
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).remove(removed.capture(), eq(SheetRowHash.class));
+
+        assertEquals("deleted", removed.getAllValues().get(0).getQueryObject().get("submissionId"));
+        assertFalse(removed.getAllValues().stream()
+                .anyMatch(query -> "current".equals(query.getQueryObject().get("submissionId"))));
+    }
+}
@@ -0,0 +1,167 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SheetRowStoreTest {
+
+    private static final String SHEET_ID = "sheet1";
+
+    private MongoTemplate mongoTemplate;
+    private SheetRowStore sheetRowStore;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        sheetRowStore = new SheetRowStore(mongoTemplate, new SheetLoaderConfig());
+    }
+
+    @Test
+    public void external_rows_are_off_by_default() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRows(rows("a", 100_000));
+
+        assertEquals(false, sheetRowStore.shouldExternaliseRows(sheet));
+    }
+
+    @Test
+    public void sheet_without_rows_has_no_rows() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setId(SHEET_ID);
+        sheet.setRows(null);
+
+        assertEquals(0, sheetRowStore.rowCount(sheet));
+    }
+
+    @Test
+    public void page_of_external_rows_is_read_from_their_chunks() {
+        givenExternalRows(5, 2);
+        givenChunks(Arrays.asList(chunk(1, rows("b", 2))));
+
+        Page<Row> page = sheetRowStore.readRows(SHEET_ID, new PageRequest(1, 2));
+
+        assertEquals(5, page.getTotalElements());
+        assertEquals(Arrays.asList("b0", "b1"), firstCells(page.getContent()));
+    }
+
+    @Test
+    public void page_past_the_end_is_empty() {
+        givenExternalRows(5, 2);
+
+        Page<Row> page = sheetRowStore.readRows(SHEET_ID, new PageRequest(3, 2));
+
+        assertTrue(page.getContent().isEmpty());
+        assertEquals(5, page.getTotalElements());
+    }
+
+    @Test
+    public void page_of_inline_rows_reads_only_its_slice() {
+        DBObject rowCount = new BasicDBObject("rowCount", 5);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Spreadsheet.class), eq(DBObject.class)))
+                .thenReturn(new AggregationResults<>(Arrays.asList(rowCount), new BasicDBObject()));
+
+        Spreadsheet slice = new Spreadsheet();
+        slice.setRows(rows("b", 2));
+        when(mongoTemplate.findOne(any(Query.class), eq(Spreadsheet.class))).thenReturn(slice);
+
+        Page<Row> page = sheetRowStore.readRows(SHEET_ID, new PageRequest(1, 2));
+
+        assertEquals(5, page.getTotalElements());
+        assertEquals(Arrays.asList("b0", "b1"), firstCells(page.getContent()));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findOne(query.capture(), eq(Spreadsheet.class));
+        assertEquals(
+                new BasicDBObject("rows", new BasicDBObject("$slice", Arrays.asList(2, 2))),
+                query.getValue().getFieldsObject()
+        );
+    }
+
+    @Test
+    public void range_past_the_rows_of_short_chunks_is_empty() {
+        givenExternalRows(6, 3);
+        givenChunks(Arrays.asList(chunk(1, rows("b", 1))));
+
+        assertTrue(sheetRowStore.readRows(SHEET_ID, 5, 6).isEmpty());
+    }
+
+    @Test
+    public void pruned_external_rows_are_packed_into_full_chunks() {
+        givenExternalRows(6, 2);
+        when(mongoTemplate.findById(SHEET_ID + "-0", SheetRowChunk.class)).thenReturn(chunk(0, rows("a", 1)));
+        when(mongoTemplate.findById(SHEET_ID + "-1", SheetRowChunk.class)).thenReturn(null);
+        when(mongoTemplate.findById(SHEET_ID + "-2", SheetRowChunk.class)).thenReturn(chunk(2, rows("c", 2)));
+
+        sheetRowStore.pruneProcessedRows(SHEET_ID);
+
+        ArgumentCaptor<SheetRowChunk> savedChunks = ArgumentCaptor.forClass(SheetRowChunk.class);
+        verify(mongoTemplate, atLeastOnce()).save(savedChunks.capture());
+
+        assertEquals(2, savedChunks.getAllValues().size());
+        assertEquals(SHEET_ID + "-0", savedChunks.getAllValues().get(0).getId());
+        assertEquals(Arrays.asList("a0", "c0"), firstCells(savedChunks.getAllValues().get(0).getRows()));
+        assertEquals(SHEET_ID + "-1", savedChunks.getAllValues().get(1).getId());
+        assertEquals(Arrays.asList("c1"), firstCells(savedChunks.getAllValues().get(1).getRows()));
+
+        verify(mongoTemplate).remove(any(Query.class), eq(SheetRowChunk.class));
+    }
+
+    private void givenExternalRows(int rowCount, int chunkSize) {
+        ExternalSheetRows externalSheetRows = new ExternalSheetRows();
+        externalSheetRows.setSheetId(SHEET_ID);
+        externalSheetRows.setRowCount(rowCount);
+        externalSheetRows.setChunkSize(chunkSize);
+
+        when(mongoTemplate.findById(SHEET_ID, ExternalSheetRows.class)).thenReturn(externalSheetRows);
+    }
+
+    private void givenChunks(List<SheetRowChunk> chunks) {
+        when(mongoTemplate.find(any(Query.class), eq(SheetRowChunk.class))).thenReturn(chunks);
+    }
+
+    private static SheetRowChunk chunk(int chunkIndex, List<Row> rows) {
+        SheetRowChunk chunk = new SheetRowChunk();
+        chunk.setId(SHEET_ID + "-" + chunkIndex);
+        chunk.setSheetId(SHEET_ID);
+        chunk.setChunkIndex(chunkIndex);
+        chunk.setRows(rows);
+        return chunk;
+    }
+
+    private static List<Row> rows(String prefix, int count) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new Row(new String[]{prefix + i}));
+        }
+        return rows;
+    }
+
+    private static List<String> firstCells(List<Row> rows) {
+        return rows.stream().map(row -> row.getCells().get(0)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,71 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import org.junit.Test;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SheetShardPlannerTest {
+
+    @Test
+    public void split_rows_into_shards_of_the_requested_size() {
+        List<Row> rows = rows("a", "b", "c", "d", "e", "f", "g");
+
+        List<SheetLoadShard> shards = SheetShardPlanner.plan("sheet", rows, 0, 3);
+
+        assertEquals(3, shards.size());
+        assertShard(shards.get(0), 0, 3, 0);
+        assertShard(shards.get(1), 3, 6, 1);
+        assertShard(shards.get(2), 6, 7, 2);
+    }
+
+    @Test
+    public void keep_rows_with_the_same_alias_in_one_shard() {
+        List<Row> rows = rows("a", "b", "c", "a", "d", "e", "f");
+
+        List<SheetLoadShard> shards = SheetShardPlanner.plan("sheet", rows, 0, 2);
+
+        assertEquals(3, shards.size());
+        assertShard(shards.get(0), 0, 4, 0);
+        assertShard(shards.get(1), 4, 6, 1);
+        assertShard(shards.get(2), 6, 7, 2);
+    }
+
+    @Test
+    public void rows_without_alias_do_not_constrain_the_cuts() {
+        List<Row> rows = rows("", "", "", "");
+
+        List<SheetLoadShard> shards = SheetShardPlanner.plan("sheet", rows, 0, 2);
+
+        assertEquals(2, shards.size());
+        assertShard(shards.get(0), 0, 2, 0);
+        assertShard(shards.get(1), 2, 4, 1);
+    }
+
+    @Test
+    public void sheet_without_alias_column() {
+        List<Row> rows = rows("a", "a", "a");
+
+        List<SheetLoadShard> shards = SheetShardPlanner.plan("sheet", rows, -1, 1);
+
+        assertEquals(3, shards.size());
+    }
+
+    private void assertShard(SheetLoadShard shard, int fromRow, int toRow, int shardIndex) {
+        assertEquals("sheet", shard.getSheetId());
+        assertEquals(fromRow, shard.getFromRow());
+        assertEquals(toRow, shard.getToRow());
+        assertEquals(shardIndex, shard.getShardIndex());
+    }
+
+    private List<Row> rows(String... aliases) {
+        List<Row> rows = new ArrayList<>();
+        for (String alias : aliases) {
+            rows.add(new Row(new String[]{alias, "9606"}));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,156 @@
+package uk.ac.ebi.subs.api.sheetloader;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.gridfs.GridFSDBFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import uk.ac.ebi.subs.api.converters.SheetCsvMessageConverter;
+import uk.ac.ebi.subs.api.converters.SheetXlsxReader;
+import uk.ac.ebi.subs.api.services.SheetService;
+import uk.ac.ebi.subs.api.services.SheetUploadReader;
+import uk.ac.ebi.subs.api.validators.SheetValidator;
+import uk.ac.ebi.subs.repository.model.sheets.Row;
+import uk.ac.ebi.subs.repository.model.sheets.SheetStatusEnum;
+import uk.ac.ebi.subs.repository.model.sheets.Spreadsheet;
+import uk.ac.ebi.subs.repository.repos.SpreadsheetRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SheetUploadStoreTest {
+
+    private GridFsTemplate gridFsTemplate;
+    private SpreadsheetRepository spreadsheetRepository;
+    private SheetRowStore sheetRowStore;
+    private SheetLoadProgressService sheetLoadProgressService;
+
+    private SheetUploadStore sheetUploadStore;
+
+    @Before
+    public void setUp() {
+        gridFsTemplate = mock(GridFsTemplate.class);
+        spreadsheetRepository = mock(SpreadsheetRepository.class);
+        sheetRowStore = mock(SheetRowStore.class);
+        sheetLoadProgressService = mock(SheetLoadProgressService.class);
+
+        when(spreadsheetRepository.save(any(Spreadsheet.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+
+        sheetUploadStore = new SheetUploadStore(
+                gridFsTemplate,
+                new SheetUploadReader(new SheetService(), new SheetCsvMessageConverter(), new SheetXlsxReader()),
+                spreadsheetRepository,
+                sheetRowStore,
+                sheetLoadProgressService,
+                new SheetValidator(spreadsheetRepository)
+        );
+    }
+
+    @Test
+    public void read_staged_gzip_upload_into_rows() throws IOException {
+        stageFile(gzip("alias,taxon id\ns1,9606\ns2,10090\n"), "text/csv", "gzip");
+
+        Spreadsheet sheet = sheetUploadStore.unstage(acceptedSheet());
+
+        assertEquals(Arrays.asList("alias", "taxon id"), sheet.getHeaderRow().getCells());
+        assertEquals(2, sheet.getRows().size());
+        assertEquals(Arrays.asList("s2", "10090"), sheet.getRows().get(1).getCells());
+
+        verify(spreadsheetRepository).save(sheet);
+        verify(gridFsTemplate).delete(any(Query.class));
+        verify(sheetLoadProgressService, never()).markFailed(anyString(), anyString());
+    }
+
+    @Test
+    public void fail_the_load_of_an_upload_without_rows() {
+        stageFile("alias,taxon id\n".getBytes(StandardCharsets.UTF_8), "text/csv", null);
+        Spreadsheet sheet = acceptedSheet();
+
+        assertNull(sheetUploadStore.unstage(sheet));
+
+        verify(sheetLoadProgressService).markFailed(
+                "sheet1", "The uploaded file is not a valid sheet (rows: This required field has not been set)");
+        assertEquals(SheetStatusEnum.Submitted, sheet.getStatus());
+        assertTrue(sheet.getRows().isEmpty());
+        verify(spreadsheetRepository, never()).save(any(Spreadsheet.class));
+        verify(gridFsTemplate).delete(any(Query.class));
+    }
+
+    @Test
+    public void fail_the_load_of_an_unreadable_upload() {
+        stageFile("alias,taxon id\ns1,9606\n".getBytes(StandardCharsets.UTF_8), "application/gzip", null);
+
+        assertNull(sheetUploadStore.unstage(acceptedSheet()));
+
+        verify(sheetLoadProgressService).markFailed(eq("sheet1"), anyString());
+        verify(gridFsTemplate).delete(any(Query.class));
+    }
+
+    @Test
+    public void redelivered_failed_sheet_is_not_failed_again() {
+        SheetLoadProgress progress = new SheetLoadProgress();
+        progress.setStage(SheetLoadStage.Failed);
+        when(sheetLoadProgressService.findProgress("sheet1")).thenReturn(progress);
+
+        assertNull(sheetUploadStore.unstage(acceptedSheet()));
+
+        verify(gridFsTemplate, never()).findOne(any(Query.class));
+        verify(sheetLoadProgressService, never()).markFailed(anyString(), anyString());
+        verify(gridFsTemplate).delete(any(Query.class));
+    }
+
+    @Test
+    public void redelivered_sheet_is_not_read_again() {
+        Spreadsheet sheet = acceptedSheet();
+        sheet.setHeaderRow(new Row(new String[]{"alias"}));
+
+        assertSame(sheet, sheetUploadStore.unstage(sheet));
+
+        verify(gridFsTemplate, never()).findOne(any(Query.class));
+        verify(spreadsheetRepository, never()).save(any(Spreadsheet.class));
+        verify(gridFsTemplate).delete(any(Query.class));
+    }
+
+    private void stageFile(byte[] content, String contentType, String contentEncoding) {
+        GridFSDBFile file = mock(GridFSDBFile.class);
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(content));
+        when(file.getContentType()).thenReturn(contentType);
+        when(file.getMetaData()).thenReturn(
+                contentEncoding == null ? new BasicDBObject() : new BasicDBObject("contentEncoding", contentEncoding)
+        );
+
+        when(gridFsTemplate.findOne(any(Query.class))).thenReturn(file);
+    }
+
+    private static Spreadsheet acceptedSheet() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setId("sheet1");
+        sheet.setStatus(SheetStatusEnum.Submitted);
+        return sheet;
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}